@@ -0,0 +1,282 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous access log of server, so that request threads never format text or wait for stdout.
+ * <p>
+ * Request thread claims a slot of a bounded lock-free ring buffer and fills its fixed fields: time, level, and
+ * references to operation, key, status and detail, plus value size. Each slot has a sequence number that tells
+ * whether it is free or filled (Vyukov's bounded queue), so producers only contend on one CAS and never block; when
+ * ring is full the record is dropped and counted. One background thread takes filled slots in order, formats them
+ * into lines and writes them in batches, flushing when ring is empty. Values are never logged.
+ * <p>
+ * Levels are OFF, WARN (timeouts, broken connections), INFO (connections and admin operations) and DEBUG (every
+ * request). Requests may be sampled, 1 of <code>sample</code> is logged. Both can be changed at runtime, e.g. with
+ * <code>verbosity</code> command of ASCII protocol; a disabled level costs one volatile read.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 03:00
+ * Created with IntelliJ IDEA
+ */
+
+public final class AccessLog {
+
+    static final int OFF = 0;
+    static final int WARN = 1;
+    static final int INFO = 2;
+    static final int DEBUG = 3;
+    private static final String[] LEVELS = {"OFF", "WARN", "INFO", "DEBUG"};
+
+    private static volatile int level = INFO;
+    private static volatile int sample = 1;
+    private static volatile AccessLog log;      // null until started, records are dropped silently before
+
+    private final int mask;
+    private final AtomicLongArray sequence;     // slot i is free for position p if sequence is p, filled if p + 1
+    private final AtomicLong tail = new AtomicLong();       // next position to claim
+    private final AtomicLong dropped = new AtomicLong();
+    private long head = 0;      // next position to take, only used by writer thread
+    private final long[] times;
+    private final int[] levels;
+    private final String[] ops;
+    private final String[] keys;
+    private final Object[] details;
+    private final long[] sizes;
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(256);
+
+    private AccessLog(int capacity, Writer out) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+        times = new long[size];
+        levels = new int[size];
+        ops = new String[size];
+        keys = new String[size];
+        details = new Object[size];
+        sizes = new long[size];
+        this.out = out;
+    }
+
+    /**
+     * Start writer thread.
+     *
+     * @param capacity    records that ring buffer holds
+     * @param path        log file, appended to, or null for stdout
+     * @param startLevel  level name or number
+     * @param startSample log 1 of every sample requests
+     * @throws IOException if log file can not be opened
+     */
+    static synchronized void start(int capacity, String path, String startLevel, int startSample) throws IOException {
+        if (log != null) {
+            return;
+        }
+        configure(startLevel, startSample);
+        Writer writer = path == null
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : new FileWriter(path, StandardCharsets.UTF_8, true);
+        AccessLog started = new AccessLog(capacity, new BufferedWriter(writer, 64 * 1024));
+        Thread thread = new Thread(started::drain, "access-log");
+        thread.setDaemon(true);
+        thread.start();
+
+        /* Records of last requests before exit are still written */
+        Runtime.getRuntime().addShutdownHook(new Thread(started::flush));
+        log = started;
+    }
+
+    /**
+     * Change level and sampling.
+     *
+     * @param name      level name (off, warn, info, debug) or number 0 - 3
+     * @param newSample log 1 of every newSample requests, at least 1
+     * @throws IllegalArgumentException if level is unknown
+     */
+    static void configure(String name, int newSample) {
+        int parsed = -1;
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equalsIgnoreCase(name) || String.valueOf(i).equals(name)) {
+                parsed = i;
+            }
+        }
+        if (parsed < 0) {
+            throw new IllegalArgumentException("Unknown log level: " + name);
+        }
+        sample = Math.max(1, newSample);
+        level = parsed;
+    }
+
+    /**
+     * @return current level and sampling, as text
+     */
+    static String settings() {
+        return String.format("%s, 1/%d sampled, %d dropped", LEVELS[level], sample, dropped());
+    }
+
+    /**
+     * @return number of records dropped because ring buffer was full
+     */
+    static long dropped() {
+        AccessLog current = log;
+        return current == null ? 0 : current.dropped.get();
+    }
+
+    /**
+     * Log one request at DEBUG level, if it is sampled.
+     *
+     * @param op     operation
+     * @param key    key, or null
+     * @param status status of response
+     * @param size   bytes of value sent or stored, or entry count
+     */
+    static void request(String op, String key, Status status, long size) {
+        if (level < DEBUG || (sample > 1 && ThreadLocalRandom.current().nextInt(sample) != 0)) {
+            return;
+        }
+        AccessLog current = log;
+        if (current != null) {
+            current.offer(DEBUG, op, key, status, size);
+        }
+    }
+
+    /**
+     * Log an event that is not a request.
+     *
+     * @param eventLevel WARN or INFO
+     * @param what       constant description
+     * @param detail     detail, formatted later by writer thread, or null
+     */
+    static void event(int eventLevel, String what, Object detail) {
+        if (level < eventLevel) {
+            return;
+        }
+        AccessLog current = log;
+        if (current != null) {
+            current.offer(eventLevel, what, null, detail, 0);
+        }
+    }
+
+    /**
+     * Claim a slot, fill it and publish it. Record is dropped if ring is full.
+     */
+    private void offer(int recordLevel, String op, String key, Object detail, long size) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long difference = sequence.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        times[slot] = System.currentTimeMillis();
+        levels[slot] = recordLevel;
+        ops[slot] = op;
+        keys[slot] = key;
+        details[slot] = detail;
+        sizes[slot] = size;
+        sequence.lazySet(slot, position + 1);
+    }
+
+    /**
+     * Writer thread: take records in order, write them in batches, and park shortly when ring is empty.
+     */
+    private void drain() {
+        long reported = 0;
+        while (true) {
+            int written = take(4096);
+            long lost = dropped.get();
+            try {
+                if (lost != reported) {
+                    out.write(String.format("%s WARN access log dropped %d records%n", Instant.now(), lost - reported));
+                    reported = lost;
+                }
+                if (written == 0) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (written == 0) {
+                LockSupport.parkNanos(1000000);
+            }
+        }
+    }
+
+    /**
+     * Write up to max filled records.
+     *
+     * @return number of records written
+     */
+    private synchronized int take(int max) {
+        int count = 0;
+        while (count < max) {
+            int slot = (int) head & mask;
+            if (sequence.get(slot) != head + 1) {
+                break;
+            }
+            format(slot);
+            ops[slot] = null;
+            keys[slot] = null;
+            details[slot] = null;
+            sequence.lazySet(slot, head + mask + 1);
+            head++;
+            count++;
+            try {
+                out.append(line);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write everything that is filled, used at exit.
+     */
+    private void flush() {
+        while (take(Integer.MAX_VALUE) > 0) {
+
+            /* Until ring is empty */
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void format(int slot) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(times[slot])).append(' ').append(LEVELS[levels[slot]]).append(' ');
+        line.append(ops[slot]);
+        if (keys[slot] != null) {
+            line.append(" [").append(keys[slot]).append(']');
+        }
+        if (details[slot] != null) {
+            line.append(' ').append(details[slot]);
+        }
+        if (levels[slot] == DEBUG) {
+            line.append(' ').append(sizes[slot]);
+        }
+        line.append(System.lineSeparator());
+    }
+}
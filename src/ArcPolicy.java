@@ -0,0 +1,137 @@
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Adaptive Replacement Cache (ARC) policy, by Megiddo and Modha.
+ * <p>
+ * Resident nodes are split into T1, nodes that have been used once since they were admitted, and T2, nodes that have
+ * been used at least twice. B1 and B2 are ghost lists that only remember keys recently evicted from T1 and T2.
+ * A miss that hits B1 means T1 was too small, so target size p of T1 grows; a miss that hits B2 means T2 was too
+ * small, so p shrinks. Hence the split between recency and frequency follows the workload by itself, and one scan of
+ * new keys can only flush T1. Directory (resident and ghost keys) is kept within twice the capacity.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 23:10
+ * Created with IntelliJ IDEA
+ */
+
+class ArcPolicy implements EvictionPolicy {
+    private final int capacity;
+    private final NodeList t1 = new NodeList();       // recent
+    private final NodeList t2 = new NodeList();       // frequent
+    private final LinkedHashSet<String> b1 = new LinkedHashSet<>();        // ghosts of T1, oldest first
+    private final LinkedHashSet<String> b2 = new LinkedHashSet<>();        // ghosts of T2, oldest first
+    private int p = 0;      // target size of T1
+
+    /**
+     * @param capacity cache capacity, at least 1 (checked by LRUCache)
+     */
+    ArcPolicy(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public Node admit(Node node, boolean full) {
+        String key = node.key;
+        Node victim = null;
+        if (b1.contains(key)) {
+
+            /* Recently evicted from T1, favor recency */
+            p = Math.min(capacity, p + Math.max(1, b2.size() / b1.size()));
+            b1.remove(key);
+            if (full) {
+                victim = replace(false);
+            }
+            node.frequent = true;
+            t2.addFirst(node);
+            return victim;
+        }
+        if (b2.contains(key)) {
+
+            /* Recently evicted from T2, favor frequency */
+            p = Math.max(0, p - Math.max(1, b1.size() / b2.size()));
+            b2.remove(key);
+            if (full) {
+                victim = replace(true);
+            }
+            node.frequent = true;
+            t2.addFirst(node);
+            return victim;
+        }
+
+        /* Not seen recently */
+        if (t1.size + b1.size() >= capacity) {
+            if (t1.size < capacity) {
+                removeOldest(b1);
+                if (full) {
+                    victim = replace(false);
+                }
+            } else {
+                victim = t1.pollLast();
+            }
+        } else {
+            int total = t1.size + t2.size + b1.size() + b2.size();
+            if (total >= 2 * capacity) {
+                removeOldest(b2);
+            }
+            if (full) {
+                victim = replace(false);
+            }
+        }
+        node.frequent = false;
+        t1.addFirst(node);
+        return victim;
+    }
+
+    public void access(Node node) {
+        (node.frequent ? t2 : t1).remove(node);
+        node.frequent = true;
+        t2.addFirst(node);
+    }
+
+    public void remove(Node node) {
+        (node.frequent ? t2 : t1).remove(node);
+    }
+
+    /**
+     * Nodes only move from T1 to T2, never back.
+     */
+    public NodeList[] lists() {
+        return new NodeList[]{t1, t2};
+    }
+
+    public String name() {
+        return "arc";
+    }
+
+    /**
+     * @return target size of T1, for stats
+     */
+    int target() {
+        return p;
+    }
+
+    /**
+     * Evict least recently used node of T1 or T2 according to target size, and remember its key in ghost list.
+     *
+     * @param inB2 if missing key was found in B2
+     * @return evicted node
+     */
+    private Node replace(boolean inB2) {
+        boolean fromT1 = t1.size > 0 && (t1.size > p || (inB2 && t1.size == p) || t2.size == 0);
+        Node victim = fromT1 ? t1.pollLast() : t2.pollLast();
+        if (fromT1) {
+            b1.add(victim.key);
+        } else {
+            b2.add(victim.key);
+        }
+        return victim;
+    }
+
+    private static void removeOldest(LinkedHashSet<String> ghosts) {
+        Iterator<String> it = ghosts.iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,919 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming parser for memcached text protocol.
+ * Supported commands:
+ * <code>get [key 1] ... [key n]</code>, <code>gets [key 1] ... [key n]</code>,
+ * <code>set/add/replace/append/prepend [key] [flags] [exptime] [bytes] [noreply]</code> followed by data block,
+ * <code>cas [key] [flags] [exptime] [bytes] [cas unique] [noreply]</code> followed by data block,
+ * <code>delete [key] [noreply]</code>, <code>incr/decr [key] [delta] [noreply]</code>,
+ * <code>stats</code>, <code>version</code> and <code>quit</code>.
+ * <code>use [keyspace]</code> selects keyspace of following commands in this connection (see in Keyspaces.java), and
+ * <code>use default</code> goes back to default keyspace.
+ * Besides memcached commands, <code>scan [prefix] [count] [cursor]</code> lists one page of keys with given prefix
+ * ("*" for all keys) as VALUE lines, followed by <code>CURSOR [key]</code> line if more keys may follow.
+ * <code>getrange [key] [offset] [length]</code> replies part of value (offset and length in characters) as one VALUE
+ * line with flags 0.
+ * <code>verbosity [level] [sample] [noreply]</code> changes level (off, warn, info, debug or 0 - 3) and request
+ * sampling of access log of whole server (see in AccessLog.java).
+ * <p>
+ * Incoming bytes are kept in one buffer and tokens are recorded as offsets into it, so command names and numbers
+ * are never converted to String. Many commands may be pipelined in one connection, replies are only flushed when
+ * there is no more pending input.
+ * Expiration time is accepted but ignored, since cache does not support expiring entries.
+ * Connection is IDLE (see in ConnectionReaper.java) while it waits with no unread input, READ while rest of a command
+ * is arriving, and WRITE while a command runs and its replies are written.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 16:10
+ * Created with IntelliJ IDEA
+ */
+
+class AsciiProtocol {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_LINE = 2048;       // longest command line accepted
+    private static final int MAX_KEY = 250;     // same key length limit as memcached
+    private static final int MAX_VALUE = 1024 * 1024;       // largest data block accepted
+    private static final int MAX_TOKENS = 24;
+
+    private static final byte[] GET = bytes("get");
+    private static final byte[] GETS = bytes("gets");
+    private static final byte[] SET = bytes("set");
+    private static final byte[] ADD = bytes("add");
+    private static final byte[] REPLACE = bytes("replace");
+    private static final byte[] CAS = bytes("cas");
+    private static final byte[] APPEND = bytes("append");
+    private static final byte[] PREPEND = bytes("prepend");
+    private static final byte[] GETRANGE = bytes("getrange");
+    private static final byte[] DELETE = bytes("delete");
+    private static final byte[] INCR = bytes("incr");
+    private static final byte[] DECR = bytes("decr");
+    private static final byte[] STATS = bytes("stats");
+    private static final byte[] SCAN = bytes("scan");
+    private static final byte[] ALL = bytes("*");
+    private static final byte[] VERSION = bytes("version");
+    private static final byte[] QUIT = bytes("quit");
+    private static final byte[] USE = bytes("use");
+    private static final byte[] VERBOSITY = bytes("verbosity");
+    private static final byte[] NOREPLY = bytes("noreply");
+
+    private static final byte[] VALUE = bytes("VALUE ");
+    private static final byte[] END = bytes("END\r\n");
+    private static final byte[] STORED = bytes("STORED\r\n");
+    private static final byte[] NOT_STORED = bytes("NOT_STORED\r\n");
+    private static final byte[] EXISTS = bytes("EXISTS\r\n");
+    private static final byte[] DELETED = bytes("DELETED\r\n");
+    private static final byte[] NOT_FOUND = bytes("NOT_FOUND\r\n");
+    private static final byte[] ERROR = bytes("ERROR\r\n");
+    private static final byte[] TOO_LARGE = bytes("SERVER_ERROR object too large for cache\r\n");
+    private static final byte[] OK = bytes("OK\r\n");
+    private static final byte[] CRLF = bytes("\r\n");
+    private static final byte[] STAT_ITEMS = bytes("STAT curr_items ");
+    private static final byte[] STAT_COMPRESSED = bytes("STAT compressed_items ");
+    private static final byte[] STAT_DEDUP_VALUES = bytes("STAT dedup_values ");
+    private static final byte[] STAT_DEDUP_REFS = bytes("STAT dedup_refs ");
+    private static final byte[] STAT_HOT_KEYS = bytes("STAT hot_keys ");
+    private static final byte[] STAT_HITS = bytes("STAT get_hits ");
+    private static final byte[] STAT_MISSES = bytes("STAT get_misses ");
+    private static final byte[] STAT_POLICY = bytes("STAT eviction_policy ");
+    private static final byte[] STAT_KEYSPACE = bytes("STAT keyspace ");
+    private static final byte[] STAT_IDLE_TIMEOUTS = bytes("STAT idle_timeouts ");
+    private static final byte[] STAT_READ_TIMEOUTS = bytes("STAT read_timeouts ");
+    private static final byte[] STAT_WRITE_TIMEOUTS = bytes("STAT write_timeouts ");
+    private static final byte[] STAT_LOG_DROPPED = bytes("STAT log_dropped ");
+    private static final int HOT_KEYS = 10;
+    private static final byte[] VERSION_REPLY = bytes("VERSION 1.0\r\n");
+    private static final byte[] CURSOR = bytes("CURSOR ");
+    private static final int DEFAULT_PAGE = 100;
+    private static final int MAX_PAGE = 1000;
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final Keyspaces keyspaces;
+    private KeyValueStore store;        // store of selected keyspace
+    private String keyspace = Keyspaces.DEFAULT;
+    private final HotKeyTracker hotKeys;        // null if hot key tracking is disabled
+    private final ConnectionReaper reaper;
+    private final ConnectionReaper.Watch watch;
+
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int pos = 0;        // start of unread data
+    private int limit = 0;      // end of valid data
+    private final int[] tokenStart = new int[MAX_TOKENS];
+    private final int[] tokenEnd = new int[MAX_TOKENS];
+    private int tokens = 0;
+    private int lineEnd = 0;        // end of current command line, without CR LF
+    private int rest = 0;       // where tokenize stopped, before lineEnd if line has more than MAX_TOKENS tokens
+    private final byte[] digits = new byte[20];     // scratch space for writing numbers
+    private final String[] keys = new String[MAX_TOKENS];       // keys of multi-get
+    private final Node[] holders = new Node[MAX_TOKENS];        // reused to receive values of multi-get
+    private final boolean[] found = new boolean[MAX_TOKENS];
+
+    /**
+     * @param in        socket input stream
+     * @param out       socket output stream
+     * @param keyspaces keyspaces that shared by all connections
+     * @param hotKeys   hot key tracker, or null
+     * @param reaper    connection reaper, for stats
+     * @param watch     deadline of this connection
+     */
+    AsciiProtocol(InputStream in, OutputStream out, Keyspaces keyspaces, HotKeyTracker hotKeys,
+                  ConnectionReaper reaper, ConnectionReaper.Watch watch) {
+        this.in = in;
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+        this.keyspaces = keyspaces;
+        this.store = keyspaces.defaultStore();
+        this.hotKeys = hotKeys;
+        this.reaper = reaper;
+        this.watch = watch;
+        for (int i = 0; i < MAX_TOKENS; i++) {
+            holders[i] = new Node();
+        }
+    }
+
+    /**
+     * Serve commands until client sends <code>quit</code> or closes connection.
+     *
+     * @param first first byte that has already been read from stream to identify protocol
+     * @throws IOException if socket read or write failed
+     */
+    void serve(int first) throws IOException {
+        buf[0] = (byte) first;
+        limit = 1;
+
+        while (true) {
+            int eol = nextLine();
+            if (eol < 0) {
+                break;
+            }
+            lineEnd = eol;
+            if (lineEnd > pos && buf[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            tokenize(pos, lineEnd, 0);
+            pos = eol + 1;
+
+            /* Large replies are written while command runs, not only when flushed */
+            watch.expect(ConnectionReaper.WRITE);
+
+            if (tokens == 0) {
+                out.write(ERROR);
+            } else if (!dispatch()) {
+                break;
+            }
+            shrink();
+        }
+        watch.expect(ConnectionReaper.WRITE);
+        out.flush();
+    }
+
+    /**
+     * Run one parsed command.
+     *
+     * @return false if connection should be closed
+     * @throws IOException if socket read or write failed
+     */
+    private boolean dispatch() throws IOException {
+        if (token(0, GET)) {
+            retrieve(false);
+        } else if (token(0, GETS)) {
+            retrieve(true);
+        } else if (token(0, SET)) {
+            return storage(SET);
+        } else if (token(0, ADD)) {
+            return storage(ADD);
+        } else if (token(0, REPLACE)) {
+            return storage(REPLACE);
+        } else if (token(0, CAS)) {
+            return storage(CAS);
+        } else if (token(0, APPEND)) {
+            return storage(APPEND);
+        } else if (token(0, PREPEND)) {
+            return storage(PREPEND);
+        } else if (token(0, GETRANGE)) {
+            getRange();
+        } else if (token(0, DELETE)) {
+            delete();
+        } else if (token(0, INCR)) {
+            arithmetic(true);
+        } else if (token(0, DECR)) {
+            arithmetic(false);
+        } else if (token(0, STATS)) {
+            out.write(STAT_KEYSPACE);
+            writeAscii(keyspace);
+            out.write(CRLF);
+            out.write(STAT_ITEMS);
+            writeAscii(store.stats());
+            out.write(CRLF);
+            out.write(STAT_COMPRESSED);
+            writeNumber(store.compressedCount());
+            out.write(CRLF);
+            out.write(STAT_DEDUP_VALUES);
+            writeNumber(store.dedupValues());
+            out.write(CRLF);
+            out.write(STAT_DEDUP_REFS);
+            writeNumber(store.dedupRefs());
+            out.write(CRLF);
+            out.write(STAT_HITS);
+            writeNumber(store.hits());
+            out.write(CRLF);
+            out.write(STAT_MISSES);
+            writeNumber(store.misses());
+            out.write(CRLF);
+            out.write(STAT_POLICY);
+            writeAscii(store.policy());
+            out.write(CRLF);
+            out.write(STAT_IDLE_TIMEOUTS);
+            writeNumber(reaper.closed(ConnectionReaper.IDLE));
+            out.write(CRLF);
+            out.write(STAT_READ_TIMEOUTS);
+            writeNumber(reaper.closed(ConnectionReaper.READ));
+            out.write(CRLF);
+            out.write(STAT_WRITE_TIMEOUTS);
+            writeNumber(reaper.closed(ConnectionReaper.WRITE));
+            out.write(CRLF);
+            out.write(STAT_LOG_DROPPED);
+            writeNumber(AccessLog.dropped());
+            out.write(CRLF);
+            if (hotKeys != null) {
+                out.write(STAT_HOT_KEYS);
+                writeAscii(hotKeys.report(HOT_KEYS));
+                out.write(CRLF);
+            }
+            out.write(END);
+        } else if (token(0, SCAN)) {
+            scan();
+        } else if (token(0, VERSION)) {
+            out.write(VERSION_REPLY);
+        } else if (token(0, USE)) {
+            use();
+        } else if (token(0, VERBOSITY)) {
+            verbosity();
+        } else if (token(0, QUIT)) {
+            return false;
+        } else {
+            out.write(ERROR);
+        }
+        return true;
+    }
+
+    /**
+     * <code>get</code> and <code>gets</code>, reply each found key with a VALUE line and finish with END.
+     * A line of more keys than tokens is read in batches of MAX_TOKENS - 1 keys, same as memcached.
+     *
+     * @param withCas if CAS stamp should be included in VALUE line
+     * @throws IOException if socket write failed
+     */
+    private void retrieve(boolean withCas) throws IOException {
+        if (tokens < 2) {
+            out.write(ERROR);
+            return;
+        }
+
+        /* Whole line is checked first, so that no VALUE line is sent before error */
+        int length = 0;
+        for (int i = tokenStart[1]; i < lineEnd; i++) {
+            length = buf[i] == ' ' ? 0 : length + 1;
+            if (length > MAX_KEY) {
+                clientError("key too long");
+                return;
+            }
+        }
+        while (tokens > 1) {
+            retrieveBatch(withCas);
+            tokenize(rest, lineEnd, 1);
+        }
+        out.write(END);
+    }
+
+    /**
+     * Reply found keys among tokens from index 1, without END.
+     *
+     * @param withCas if CAS stamp should be included in VALUE line
+     * @throws IOException if socket write failed
+     */
+    private void retrieveBatch(boolean withCas) throws IOException {
+        int n = tokens - 1;
+        for (int i = 0; i < n; i++) {
+            keys[i] = key(i + 1);
+        }
+
+        /* Value and CAS stamp are read together, so that client never pairs new stamp with old value */
+        store.readAll(keys, n, holders, found);
+
+        for (int i = 1; i < tokens; i++) {
+            String key = keys[i - 1];
+            Node holder = holders[i - 1];
+            if (!found[i - 1]) {
+                record(key, 0);
+                AccessLog.request(withCas ? "gets" : "get", key, Status.MISS, 0);
+                continue;
+            }
+            String val = holder.val;
+            byte[] packed = holder.packed;
+            int flags = holder.flags;
+            long cas = holder.cas;
+            byte[] data = packed == null ? val.getBytes(StandardCharsets.UTF_8) : ValueCodec.unpack(packed);
+            record(key, data.length);
+            AccessLog.request(withCas ? "gets" : "get", key, Status.HIT, data.length);
+            out.write(VALUE);
+            out.write(buf, tokenStart[i], tokenEnd[i] - tokenStart[i]);
+            out.write(' ');
+            writeNumber(flags & 0xffffffffL);
+            out.write(' ');
+            writeNumber(data.length);
+            if (withCas) {
+                out.write(' ');
+                writeNumber(cas);
+            }
+            out.write(CRLF);
+            out.write(data);
+            out.write(CRLF);
+        }
+    }
+
+    /**
+     * <code>set/add/replace [key] [flags] [exptime] [bytes] [noreply]</code> and
+     * <code>cas [key] [flags] [exptime] [bytes] [cas unique] [noreply]</code>, then read data block of given size.
+     * A data block larger than MAX_VALUE is skipped and answered with SERVER_ERROR, same as memcached.
+     *
+     * @param command one of SET, ADD, REPLACE, APPEND, PREPEND and CAS
+     * @return false if data block can not be read and connection should be closed
+     * @throws IOException if socket read or write failed
+     */
+    private boolean storage(byte[] command) throws IOException {
+        int args = command == CAS ? 6 : 5;
+        if (tokens < args || tokens > args + 1) {
+            out.write(ERROR);
+            return true;
+        }
+        boolean noreply = tokens == args + 1 && token(args, NOREPLY);
+        long flags = number(2);
+        long length = number(4);
+        long expected = 0;
+        boolean badCas = false;
+        if (command == CAS) {
+            try {
+                expected = unsigned(5);
+            } catch (NumberFormatException e) {
+                badCas = true;
+            }
+        }
+        if (tokenEnd[1] - tokenStart[1] > MAX_KEY || flags < 0 || flags > 0xffffffffL || length < 0 || badCas) {
+            clientError("bad command line format");
+
+            /* Skip data block so that next command can be parsed */
+            return length >= 0 && length <= MAX_VALUE && skip(length + 2);
+        }
+        String key = key(1);
+        if (length > MAX_VALUE) {
+            AccessLog.request(name(command), key, Status.TOO_LARGE, length);
+            if (!noreply) {
+                out.write(TOO_LARGE);
+            }
+
+            /* Data block is read through without being kept; a length no client means is not worth waiting for */
+            return length <= Integer.MAX_VALUE && skip(length + 2);
+        }
+        if (!fill((int) length + 2)) {
+            return false;
+        }
+        int start = pos;
+        pos += (int) length + 2;
+        if (buf[start + (int) length] != '\r' || buf[start + (int) length + 1] != '\n') {
+            clientError("bad data chunk");
+            return true;
+        }
+        String val = new String(buf, start, (int) length, StandardCharsets.UTF_8);
+        record(key, 0);
+        StoreResult result;
+        if (command == SET) {
+            try {
+                store.put(key, val, (int) flags);
+            } catch (IllegalArgumentException e) {
+                AccessLog.request(name(command), key, Status.TOO_LARGE, length);
+                if (!noreply) {
+                    out.write(TOO_LARGE);
+                }
+                return true;
+            }
+            result = StoreResult.STORED;
+        } else if (command == ADD) {
+            result = store.add(key, val, (int) flags);
+        } else if (command == REPLACE) {
+            result = store.replace(key, val, (int) flags);
+        } else if (command == APPEND || command == PREPEND) {
+
+            /* Flags of existing value are kept, same as memcached */
+            long grown = store.append(key, val, command == PREPEND);
+            if (grown == KeyValueStore.TOO_LARGE) {
+                AccessLog.request(name(command), key, Status.TOO_LARGE, length);
+                if (!noreply) {
+                    out.write(TOO_LARGE);
+                }
+                return true;
+            }
+            result = grown >= 0 ? StoreResult.STORED : StoreResult.NOT_STORED;
+        } else {
+            result = store.cas(key, val, (int) flags, expected);
+        }
+        AccessLog.request(name(command), key, Status.of(result), length);
+        if (!noreply) {
+            reply(result);
+        }
+        return true;
+    }
+
+    /**
+     * <code>getrange [key] [offset] [length]</code>, reply requested part of value and finish with END.
+     *
+     * @throws IOException if socket write failed
+     */
+    private void getRange() throws IOException {
+        if (tokens != 4) {
+            out.write(ERROR);
+            return;
+        }
+        long offset = number(2);
+        long length = number(3);
+        if (tokenEnd[1] - tokenStart[1] > MAX_KEY || offset < 0 || length < 0) {
+            clientError("bad command line format");
+            return;
+        }
+        String key = key(1);
+        String part = store.getRange(key, offset, (int) Math.min(length, MAX_VALUE));
+        if (part == null) {
+            record(key, 0);
+            out.write(END);
+            return;
+        }
+        byte[] data = part.getBytes(StandardCharsets.UTF_8);
+        record(key, data.length);
+        out.write(VALUE);
+        out.write(buf, tokenStart[1], tokenEnd[1] - tokenStart[1]);
+        out.write(' ');
+        writeNumber(0);
+        out.write(' ');
+        writeNumber(data.length);
+        out.write(CRLF);
+        out.write(data);
+        out.write(CRLF);
+        out.write(END);
+    }
+
+    /**
+     * <code>delete [key] [noreply]</code>.
+     *
+     * @throws IOException if socket write failed
+     */
+    private void delete() throws IOException {
+        if (tokens < 2 || tokens > 4) {
+            out.write(ERROR);
+            return;
+        }
+        if (tokenEnd[1] - tokenStart[1] > MAX_KEY) {
+            clientError("bad command line format");
+            return;
+        }
+        boolean noreply = token(tokens - 1, NOREPLY);
+        boolean found = store.remove(key(1));
+        if (!noreply) {
+            out.write(found ? DELETED : NOT_FOUND);
+        }
+    }
+
+    /**
+     * <code>incr/decr [key] [delta] [noreply]</code>. Value and delta are unsigned 64-bit decimal numbers, increment
+     * wraps around at 2^64 and decrement stops at 0, same as memcached.
+     * Whole read-modify-write is done inside cache as one atomic operation.
+     *
+     * @param increase true for incr, false for decr
+     * @throws IOException if socket write failed
+     */
+    private void arithmetic(boolean increase) throws IOException {
+        if (tokens < 3 || tokens > 4) {
+            out.write(ERROR);
+            return;
+        }
+        if (tokenEnd[1] - tokenStart[1] > MAX_KEY) {
+            clientError("bad command line format");
+            return;
+        }
+        boolean noreply = tokens == 4 && token(3, NOREPLY);
+        long delta;
+        try {
+            delta = unsigned(2);
+        } catch (NumberFormatException e) {
+            clientError("invalid numeric delta argument");
+            return;
+        }
+        Long result;
+        try {
+            result = store.incr(key(1), delta, !increase);
+        } catch (NumberFormatException e) {
+            clientError("cannot increment or decrement non-numeric value");
+            return;
+        }
+        if (noreply) {
+            return;
+        }
+        if (result == null) {
+            out.write(NOT_FOUND);
+        } else {
+            writeNumber(result);
+            out.write(CRLF);
+        }
+    }
+
+    /**
+     * <code>scan [prefix] [count] [cursor]</code>, reply one page of entries in key order.
+     *
+     * @throws IOException if socket write failed
+     */
+    private void scan() throws IOException {
+        if (tokens < 2 || tokens > 4) {
+            out.write(ERROR);
+            return;
+        }
+        if (!store.isOrdered()) {
+            writeAscii("SERVER_ERROR ordered index disabled");
+            out.write(CRLF);
+            return;
+        }
+        long count = tokens > 2 ? number(2) : DEFAULT_PAGE;
+        if (count <= 0) {
+            clientError("invalid count argument");
+            return;
+        }
+        String prefix = token(1, ALL) ? "" : key(1);
+        String cursor = tokens > 3 ? key(3) : null;
+        ScanPage page = store.scan(prefix, cursor, (int) Math.min(count, MAX_PAGE));
+        for (int i = 0; i < page.size; i++) {
+            byte[] data = page.values[i].getBytes(StandardCharsets.UTF_8);
+            out.write(VALUE);
+            writeAscii(page.keys[i]);
+            out.write(' ');
+            writeNumber(page.flags[i] & 0xffffffffL);
+            out.write(' ');
+            writeNumber(data.length);
+            out.write(CRLF);
+            out.write(data);
+            out.write(CRLF);
+        }
+        if (page.cursor != null) {
+            out.write(CURSOR);
+            writeAscii(page.cursor);
+            out.write(CRLF);
+        }
+        out.write(END);
+    }
+
+    /**
+     * <code>use [keyspace]</code>, select keyspace of following commands.
+     *
+     * @throws IOException if socket write failed
+     */
+    private void use() throws IOException {
+        if (tokens != 2) {
+            out.write(ERROR);
+            return;
+        }
+        String name = key(1);
+        KeyValueStore selected = keyspaces.get(name);
+        if (selected == null) {
+            clientError("unknown keyspace");
+            return;
+        }
+        store = selected;
+        keyspace = name;
+        out.write(OK);
+    }
+
+    /**
+     * <code>verbosity [level] [sample] [noreply]</code>, sample defaults to 1 (every request).
+     *
+     * @throws IOException if socket write failed
+     */
+    private void verbosity() throws IOException {
+        if (tokens < 2 || tokens > 4) {
+            out.write(ERROR);
+            return;
+        }
+        boolean noreply = token(tokens - 1, NOREPLY);
+        int args = noreply ? tokens - 1 : tokens;
+        long sample = args == 3 ? number(2) : 1;
+        if (args < 2 || sample < 1 || sample > Integer.MAX_VALUE) {
+            clientError("bad command line format");
+            return;
+        }
+        try {
+            AccessLog.configure(key(1), (int) sample);
+        } catch (IllegalArgumentException e) {
+            clientError("unknown level");
+            return;
+        }
+        if (!noreply) {
+            out.write(OK);
+        }
+    }
+
+    /**
+     * @param command one of storage commands
+     * @return command name for access log
+     */
+    private static String name(byte[] command) {
+        if (command == SET) {
+            return "set";
+        } else if (command == ADD) {
+            return "add";
+        } else if (command == REPLACE) {
+            return "replace";
+        } else if (command == APPEND) {
+            return "append";
+        } else if (command == PREPEND) {
+            return "prepend";
+        }
+        return "cas";
+    }
+
+    /**
+     * Write reply line of a store operation.
+     *
+     * @param result result of store operation
+     * @throws IOException if socket write failed
+     */
+    private void reply(StoreResult result) throws IOException {
+        switch (result) {
+            case STORED:
+                out.write(STORED);
+                break;
+            case NOT_STORED:
+                out.write(NOT_STORED);
+                break;
+            case EXISTS:
+                out.write(EXISTS);
+                break;
+            default:
+                out.write(NOT_FOUND);
+        }
+    }
+
+    /**
+     * Find next line terminator, read more data from socket if needed.
+     * Pending replies are flushed before blocking on socket, so that pipelined commands are answered in batch.
+     *
+     * @return index of '\n', or -1 if connection is closed
+     * @throws IOException if socket read failed, or line is too long
+     */
+    private int nextLine() throws IOException {
+        int scan = pos;
+        while (true) {
+            for (; scan < limit; scan++) {
+                if (buf[scan] == '\n') {
+                    return scan;
+                }
+            }
+            if (limit - pos > MAX_LINE) {
+                clientError("line too long");
+                watch.expect(ConnectionReaper.WRITE);
+                out.flush();
+                return -1;
+            }
+            int shift = pos;
+            if (read() < 0) {
+                return -1;
+            }
+            scan -= shift - pos;
+        }
+    }
+
+    /**
+     * Make sure that at least n unread bytes are in buffer.
+     *
+     * @param n required bytes
+     * @return false if connection is closed before enough bytes arrived
+     * @throws IOException if socket read failed
+     */
+    private boolean fill(int n) throws IOException {
+        if (buf.length < n) {
+            byte[] larger = new byte[Math.max(n, buf.length * 2)];
+            System.arraycopy(buf, pos, larger, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+            buf = larger;
+        }
+        while (limit - pos < n) {
+            if (read() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Give back a buffer that has grown for a large data block once unread data fits in default size again, so that
+     * a connection does not keep up to MAX_VALUE bytes after one large value.
+     */
+    private void shrink() {
+        if (buf.length > BUFFER_SIZE && limit - pos <= BUFFER_SIZE) {
+            byte[] smaller = new byte[BUFFER_SIZE];
+            System.arraycopy(buf, pos, smaller, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+            buf = smaller;
+        }
+    }
+
+    /**
+     * Discard n bytes of input.
+     *
+     * @param n bytes to skip
+     * @return false if connection is closed before all bytes are skipped
+     * @throws IOException if socket read failed
+     */
+    private boolean skip(long n) throws IOException {
+        while (limit - pos < n) {
+            n -= limit - pos;
+            pos = limit;
+            if (read() < 0) {
+                return false;
+            }
+        }
+        pos += (int) n;
+        return true;
+    }
+
+    /**
+     * Read more bytes from socket. Unread data is moved to beginning of buffer first.
+     *
+     * @return number of bytes read, or -1 if connection is closed
+     * @throws IOException if socket read failed
+     */
+    private int read() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            byte[] larger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, larger, 0, limit);
+            buf = larger;
+        }
+        if (in.available() == 0) {
+            watch.expect(ConnectionReaper.WRITE);
+            out.flush();
+        }
+        watch.expect(limit > 0 ? ConnectionReaper.READ : ConnectionReaper.IDLE);
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n > 0) {
+            limit += n;
+        }
+        return n;
+    }
+
+    /**
+     * Split line into tokens separated by spaces, only offsets are recorded. At most MAX_TOKENS tokens are taken, and
+     * <code>rest</code> tells where splitting stopped.
+     *
+     * @param from  line start
+     * @param to    line end, exclusive
+     * @param first index of first token, tokens before it are kept
+     */
+    private void tokenize(int from, int to, int first) {
+        tokens = first;
+        int i = from;
+        while (i < to && tokens < MAX_TOKENS) {
+            while (i < to && buf[i] == ' ') {
+                i++;
+            }
+            if (i == to) {
+                break;
+            }
+            tokenStart[tokens] = i;
+            while (i < to && buf[i] != ' ') {
+                i++;
+            }
+            tokenEnd[tokens++] = i;
+        }
+        rest = i;
+    }
+
+    /**
+     * Check if given token equals to expected bytes.
+     *
+     * @param index    token index
+     * @param expected expected bytes
+     * @return true if match
+     */
+    private boolean token(int index, byte[] expected) {
+        int start = tokenStart[index];
+        if (tokenEnd[index] - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buf[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse token as non-negative decimal number.
+     *
+     * @param index token index
+     * @return number, or -1 if token is not a valid number or is larger than Long.MAX_VALUE
+     */
+    private long number(int index) {
+        try {
+            long n = unsigned(index);
+            return n < 0 ? -1 : n;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parse token as unsigned 64-bit decimal number, same as Long.parseUnsignedLong but without creating a String.
+     *
+     * @param index token index
+     * @return number, numbers larger than Long.MAX_VALUE are negative
+     * @throws NumberFormatException if token is not a valid number or is larger than 2^64 - 1
+     */
+    private long unsigned(int index) {
+        int start = tokenStart[index];
+        int end = tokenEnd[index];
+        if (end == start) {
+            throw new NumberFormatException("Empty number! ");
+        }
+        long n = 0;
+        for (int i = start; i < end; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new NumberFormatException("Not a number! ");
+            }
+
+            /* 2^64 - 1 is 1844674407370955161 * 10 + 5 */
+            if (Long.compareUnsigned(n, 1844674407370955161L) > 0 || (n == 1844674407370955161L && d > 5)) {
+                throw new NumberFormatException("Number is out of range! ");
+            }
+            n = n * 10 + d;
+        }
+        return n;
+    }
+
+    /**
+     * Key is the only token that converted to String, since cache is indexed by String.
+     *
+     * @param index token index
+     * @return key
+     */
+    private String key(int index) {
+        return new String(buf, tokenStart[index], tokenEnd[index] - tokenStart[index], StandardCharsets.UTF_8);
+    }
+
+    private void record(String key, int byteCount) {
+        if (hotKeys != null) {
+            hotKeys.record(key, byteCount);
+        }
+    }
+
+    /**
+     * Write number in decimal, as unsigned 64-bit number.
+     *
+     * @param n number
+     * @throws IOException if socket write failed
+     */
+    private void writeNumber(long n) throws IOException {
+        int i = digits.length;
+        do {
+            digits[--i] = (byte) ('0' + Long.remainderUnsigned(n, 10));
+            n = Long.divideUnsigned(n, 10);
+        } while (n != 0);
+        out.write(digits, i, digits.length - i);
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch < 0x80) {
+                out.write(ch);
+            } else {
+                out.write(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+    }
+
+    private void clientError(String reason) throws IOException {
+        writeAscii("CLIENT_ERROR " + reason);
+        out.write(CRLF);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
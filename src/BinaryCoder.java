@@ -1,4 +1,5 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Binary coder that can encode message class to binary array, and can also convert binary array to message class.
@@ -8,6 +9,26 @@ import java.io.*;
  * Second byte store the operation that client send to server.
  * The specific value that each operation is defined below.
  * The following bytes contains key and value in this message.
+ * CAS request carries one more 8 bytes CAS stamp after value.
+ * Highest bit of second byte is the compression flag. In request it means client accepts compressed value.
+ * In response it means value is written as 4 bytes length followed by compressed bytes (see in ValueCodec.java),
+ * instead of UTF string. Decoder decompresses it, so receiver always gets the original value. Server decodes with
+ * <code>toRequest</code>, which refuses responses, so only clients ever decompress what a peer sent.
+ * For INCR and DECR, value contains delta in request. For APPEND and PREPEND, value contains characters to be added.
+ * GETRANGE request carries offset in high 4 bytes and length in low 4 bytes of 8 bytes field (see
+ * <code>range</code> below), both in characters.
+ * GET, GETS, TRACK, GETRANGE, SET, CAS, ADD, REPLACE, APPEND, PREPEND, INCR, DECR, STATS and EXIT are answered with compact responses that
+ * contain status code and raw value only (see in Response.java), not with messages of this coder.
+ * SCAN request contains key prefix as key and cursor as value, RANGE request contains lower bound (inclusive) as key
+ * and upper bound (exclusive) as value. Both carry page size in 8 bytes after value.
+ * Server answers with a header message, whose value is next cursor (empty if scan is done) and whose 8 bytes count
+ * tells how many entry messages follow. Each entry message contains key and value.
+ * DUMP request carries page size in 8 bytes. Server streams pages of whole store in one connection, each page is
+ * framed same as SCAN, and the last header has empty value.
+ * Request may end with keyspace name in UTF string (see in Keyspaces.java). It is written only when keyspace is set,
+ * so requests of default keyspace are same as before and older clients need no change.
+ * SUBSCRIBE response carries client ID in 8 bytes, TRACK request carries client ID. INVALIDATE is pushed by server
+ * with changed key.
  * Note that if message is sent from server, then its "key" will only contain a space, since key is useless for client.
  * For some special operation such as EXIT or STATS, the message will set key and value both for space.
  *
@@ -23,10 +44,27 @@ public class BinaryCoder implements MessageCoder {
     private final int MAGIC_MASK = 0xfc00;     // used in bytes-to-string converter to check magic number
     private final int REQUEST = 0x0100;        // if it is request from client
     private final int RESPONSE = 0x0200;        // if it is response from server
+    private final int OP_MASK = 0x007f;
+    private final int COMPRESSED = 0x0080;
     private final int STATS = 0x0008;
     private final int SET = 0x0004;
     private final int GET = 0x0002;
     private final int EXIT = 0x0001;
+    private final int GETS = 0x0010;
+    private final int CAS = 0x0011;
+    private final int ADD = 0x0012;
+    private final int REPLACE = 0x0013;
+    private final int INCR = 0x0014;
+    private final int DECR = 0x0015;
+    private final int SCAN = 0x0016;
+    private final int RANGE = 0x0017;
+    private final int SUBSCRIBE = 0x0018;
+    private final int TRACK = 0x0019;
+    private final int INVALIDATE = 0x001a;
+    private final int DUMP = 0x001b;
+    private final int APPEND = 0x001c;
+    private final int PREPEND = 0x001d;
+    private final int GETRANGE = 0x001e;
 
     /**
      * Encode message to binary array.
@@ -50,22 +88,88 @@ public class BinaryCoder implements MessageCoder {
         }
 
         /* Set operation to binary that is defined before */
-        if (Msg.getOp().equals("stats")) {
-            finalMagic |= STATS;
-        } else if (Msg.getOp().equals("set")) {
-            finalMagic |= SET;
-        } else if (Msg.getOp().equals("get")) {
-            finalMagic |= GET;
-        } else if (Msg.getOp().equals("exit")) {
-            finalMagic |= EXIT;
-        } else {
-            throw new IOException("Error occurred when try to convert operation. ");
+        switch (Msg.getOp()) {
+            case "stats":
+                finalMagic |= STATS;
+                break;
+            case "set":
+                finalMagic |= SET;
+                break;
+            case "get":
+                finalMagic |= GET;
+                break;
+            case "exit":
+                finalMagic |= EXIT;
+                break;
+            case "gets":
+                finalMagic |= GETS;
+                break;
+            case "cas":
+                finalMagic |= CAS;
+                break;
+            case "add":
+                finalMagic |= ADD;
+                break;
+            case "replace":
+                finalMagic |= REPLACE;
+                break;
+            case "incr":
+                finalMagic |= INCR;
+                break;
+            case "decr":
+                finalMagic |= DECR;
+                break;
+            case "scan":
+                finalMagic |= SCAN;
+                break;
+            case "range":
+                finalMagic |= RANGE;
+                break;
+            case "subscribe":
+                finalMagic |= SUBSCRIBE;
+                break;
+            case "track":
+                finalMagic |= TRACK;
+                break;
+            case "invalidate":
+                finalMagic |= INVALIDATE;
+                break;
+            case "dump":
+                finalMagic |= DUMP;
+                break;
+            case "append":
+                finalMagic |= APPEND;
+                break;
+            case "prepend":
+                finalMagic |= PREPEND;
+                break;
+            case "getrange":
+                finalMagic |= GETRANGE;
+                break;
+            default:
+                throw new IOException("Error occurred when try to convert operation. ");
+        }
+
+        boolean packed = Msg.isResponse() && Msg.getPacked() != null;
+        if (packed || (Msg.isRequest() && Msg.isCompressed())) {
+            finalMagic |= COMPRESSED;
         }
 
         /* Write data */
         out.writeShort(finalMagic);
         out.writeUTF(Msg.getKey());
-        out.writeUTF(Msg.getVal());
+        if (packed) {
+            out.writeInt(Msg.getPacked().length);
+            out.write(Msg.getPacked());
+        } else {
+            out.writeUTF(Msg.getVal());
+        }
+        if (hasVersion(Msg.getOp(), Msg.isResponse())) {
+            out.writeLong(Msg.getVersion());
+        }
+        if (Msg.isRequest() && Msg.getKeyspace() != null && !Msg.getKeyspace().isEmpty()) {
+            out.writeUTF(Msg.getKeyspace());
+        }
         out.flush();
 
         /* Convert to bytes */
@@ -97,26 +201,82 @@ public class BinaryCoder implements MessageCoder {
         /* Obtain operation in binary array */
         boolean request = (readMagic & REQUEST) != 0;
         boolean response = (readMagic & RESPONSE) != 0;
-        boolean stats = (readMagic & STATS) != 0;
-        boolean get = (readMagic & GET) != 0;
-        boolean set = (readMagic & SET) != 0;
-        boolean exit = (readMagic & EXIT) != 0;
-
-        String op = null;
-        if (stats) {
-            op = "stats";
-        }
-        if (get) {
-            op = "get";
-        }
-        if (set) {
-            op = "set";
-        }
-        if (exit) {
-            op = "exit";
+        String op;
+        switch (readMagic & OP_MASK) {
+            case STATS:
+                op = "stats";
+                break;
+            case GET:
+                op = "get";
+                break;
+            case SET:
+                op = "set";
+                break;
+            case EXIT:
+                op = "exit";
+                break;
+            case GETS:
+                op = "gets";
+                break;
+            case CAS:
+                op = "cas";
+                break;
+            case ADD:
+                op = "add";
+                break;
+            case REPLACE:
+                op = "replace";
+                break;
+            case INCR:
+                op = "incr";
+                break;
+            case DECR:
+                op = "decr";
+                break;
+            case SCAN:
+                op = "scan";
+                break;
+            case RANGE:
+                op = "range";
+                break;
+            case SUBSCRIBE:
+                op = "subscribe";
+                break;
+            case TRACK:
+                op = "track";
+                break;
+            case INVALIDATE:
+                op = "invalidate";
+                break;
+            case DUMP:
+                op = "dump";
+                break;
+            case APPEND:
+                op = "append";
+                break;
+            case PREPEND:
+                op = "prepend";
+                break;
+            case GETRANGE:
+                op = "getrange";
+                break;
+            default:
+                op = null;
         }
+        boolean compressed = (readMagic & COMPRESSED) != 0;
         String key = in.readUTF();
-        String val = in.readUTF();
+        String val;
+        if (compressed && response) {
+            int length = in.readInt();
+            if (length < 0 || length > input.length) {
+                throw new IOException("Wrong compressed value length! ");
+            }
+            byte[] packed = new byte[length];
+            in.readFully(packed);
+            val = new String(ValueCodec.unpack(packed), StandardCharsets.UTF_8);
+        } else {
+            val = in.readUTF();
+        }
         Message convertMessage;
         if (op != null) {
             convertMessage = new Message(request, response, op);
@@ -124,10 +284,19 @@ public class BinaryCoder implements MessageCoder {
             throw new IOException("No operation found! ");
         }
 
+        convertMessage.setCompressed(compressed);
+        if (hasVersion(op, response)) {
+            convertMessage.setVersion(in.readLong());
+        }
+        if (request && in.available() > 0) {
+            convertMessage.setKeyspace(in.readUTF());
+        }
+
         if (request) {
             convertMessage.setKey(key);
             convertMessage.setVal(val);
         } else if (response) {
+            convertMessage.setKey(key);
             convertMessage.setVal(val);
         } else {
             throw new IOException("Message is not either request or response. ");
@@ -135,4 +304,48 @@ public class BinaryCoder implements MessageCoder {
 
         return convertMessage;
     }
+
+    /**
+     * Convert byte array received by server to Message class. Frame must be a request, a frame that has response bit
+     * is refused before anything is decoded, hence a peer can not make server decompress a value.
+     *
+     * @param input input byte array
+     * @return request Message
+     * @throws IOException if frame is not a request, or same as <code>toMsg</code>
+     */
+    public Message toRequest(byte[] input) throws IOException {
+        if (input.length < MIN_LENGTH) {
+            throw new IOException("Input byte array length is too short! ");
+        }
+        int readMagic = (input[0] & 0xff) << 8 | (input[1] & 0xff);
+        if ((readMagic & RESPONSE) != 0 || (readMagic & REQUEST) == 0) {
+            throw new IOException("Message is not a request! ");
+        }
+        return toMsg(input);
+    }
+
+    /**
+     * Check if message carries CAS stamp.
+     *
+     * @param op       operation
+     * @param response if message is response from server
+     * @return true for GETS / SUBSCRIBE response, CAS / GETRANGE request, and all SCAN / RANGE / TRACK / DUMP messages
+     */
+    private boolean hasVersion(String op, boolean response) {
+        if (op.equals("scan") || op.equals("range") || op.equals("track") || op.equals("dump")) {
+            return true;
+        }
+        return response ? op.equals("gets") || op.equals("subscribe") : op.equals("cas") || op.equals("getrange");
+    }
+
+    /**
+     * Pack offset and length of GETRANGE request into its 8 bytes field.
+     *
+     * @param offset first character, from 0
+     * @param length max number of characters
+     * @return packed field
+     */
+    static long range(int offset, int length) {
+        return ((long) offset << 32) | (length & 0xffffffffL);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,389 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming bulk loader that pre-warms a store from a key-value file.
+ * <p>
+ * One reader thread reads file in large chunks and cuts each chunk at a record boundary, a pool of parser threads
+ * decodes chunks in parallel and stores entries in batches, so that store lock (or partition hand-off) is taken once
+ * for each batch instead of once for each entry. Reader blocks when parsers fall behind, hence memory use is bounded
+ * by a few chunks no matter how large the file is. Progress and throughput are reported while loading.
+ * <p>
+ * Entries are stored in file order: chunks are numbered by reader, and a parser that has decoded a chunk waits until
+ * all earlier chunks are stored before it stores its own, so that when a key appears more than once, its last value
+ * in file wins. If a parser fails, loading stops and <code>load</code> throws instead of waiting for it.
+ * <p>
+ * Supported formats:
+ * CSV: one <code>[key],[value]</code> per line, key ends at first comma and value is the rest of line. Empty lines
+ * are skipped, line that has no comma is counted as bad.
+ * Binary: repeated <code>[key length (4 bytes)] [key] [value length (4 bytes)] [value]</code>, strings in UTF-8.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 21:50
+ * Created with IntelliJ IDEA
+ */
+
+public class BulkLoader {
+
+    public static final int CSV = 0;
+    public static final int BINARY = 1;
+
+    private static final int CHUNK = 4 * 1024 * 1024;       // bytes read at once
+    private static final int BATCH = 1024;      // entries stored at once
+    private static final long REPORT_MILLIS = 1000;
+    private static final Chunk END = new Chunk(null, -1);        // tells parser that no more chunks follow
+
+    private final KeyValueStore store;
+    private final int format;
+    private final int threads;
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong bad = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();        // first parser failure
+    private final Object turn = new Object();
+    private long stored = 0;        // number of chunks stored, guarded by turn
+
+    /**
+     * @param store   store that receives entries
+     * @param format  CSV or BINARY
+     * @param threads number of parser threads
+     */
+    public BulkLoader(KeyValueStore store, int format, int threads) {
+        this.store = store;
+        this.format = format;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Load given file and block until all entries are stored.
+     *
+     * @param path file path
+     * @return number of entries stored
+     * @throws IOException if file can not be read or binary file is truncated
+     */
+    public long load(String path) throws IOException {
+        try (InputStream in = new FileInputStream(path)) {
+            return load(in);
+        }
+    }
+
+    /**
+     * Load entries from stream and block until all of them are stored.
+     *
+     * @param in input stream
+     * @return number of entries stored
+     * @throws IOException if stream can not be read, binary stream is truncated or an entry can not be stored
+     */
+    public long load(InputStream in) throws IOException {
+        failure.set(null);
+        synchronized (turn) {
+            stored = 0;
+        }
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(threads * 2);
+        Thread[] parsers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            parsers[i] = new Thread(() -> parse(chunks), "bulk-loader-" + i);
+            parsers[i].setDaemon(true);
+            parsers[i].start();
+        }
+        long start = System.currentTimeMillis();
+        Thread reporter = new Thread(() -> report(start), "bulk-loader-progress");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        try {
+            read(in, chunks);
+        } finally {
+            try {
+                for (int i = 0; i < threads; i++) {
+                    chunks.put(END);
+                }
+                for (Thread parser : parsers) {
+                    parser.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reporter.interrupt();
+        }
+        if (failure.get() != null) {
+            throw new IOException("Bulk load failed! ", failure.get());
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println(String.format("Bulk load done: %d entries (%d bad) in %.1f s, %.0f entries/s. ",
+                entries.get(), bad.get(), millis / 1000.0, entries.get() * 1000.0 / millis));
+        return entries.get();
+    }
+
+    /**
+     * Read stream into chunks that each end at a record boundary. Partial record at end of a chunk is carried over to
+     * next chunk, and chunk grows if one record is larger than it.
+     *
+     * @param in     input stream
+     * @param chunks queue to parsers
+     * @throws IOException if stream can not be read or ends inside a binary record
+     */
+    private void read(InputStream in, BlockingQueue<Chunk> chunks) throws IOException {
+        byte[] buffer = new byte[CHUNK];
+        int filled = 0;
+        long sequence = 0;
+        while (true) {
+            int n = in.read(buffer, filled, buffer.length - filled);
+            if (n < 0) {
+                break;
+            }
+            filled += n;
+            if (filled < buffer.length) {
+                continue;
+            }
+            int cut = boundary(buffer, filled);
+            if (cut == 0) {
+
+                /* One record is larger than chunk */
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                continue;
+            }
+            byte[] next = new byte[Math.max(CHUNK, filled - cut)];
+            System.arraycopy(buffer, cut, next, 0, filled - cut);
+            offer(chunks, new Chunk(cut == buffer.length ? buffer : Arrays.copyOf(buffer, cut), sequence++));
+            buffer = next;
+            filled -= cut;
+        }
+        if (filled > 0) {
+            if (format == BINARY && boundary(buffer, filled) != filled) {
+                throw new IOException("Binary file is truncated! ");
+            }
+            offer(chunks, new Chunk(Arrays.copyOf(buffer, filled), sequence));
+        }
+    }
+
+    /**
+     * Hand a chunk to parsers, blocks while they are behind.
+     *
+     * @throws IOException if a parser has failed, or reader is interrupted
+     */
+    private void offer(BlockingQueue<Chunk> chunks, Chunk chunk) throws IOException {
+        if (failure.get() != null) {
+            throw new IOException("Bulk load failed! ", failure.get());
+        }
+        try {
+            chunks.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bulk load is interrupted! ");
+        }
+    }
+
+    /**
+     * Find end of last complete record in buffer.
+     *
+     * @param buffer data
+     * @param length bytes in buffer
+     * @return end of last complete record, 0 if there is none
+     * @throws IOException if a binary record has negative length
+     */
+    private int boundary(byte[] buffer, int length) throws IOException {
+        if (format == CSV) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+        int position = 0;
+        while (true) {
+            int end = skip(buffer, length, position);
+            if (end < 0) {
+                return position;
+            }
+            end = skip(buffer, length, end);
+            if (end < 0) {
+                return position;
+            }
+            position = end;
+        }
+    }
+
+    /**
+     * Skip one length-prefixed string.
+     *
+     * @return position after string, or -1 if string is not complete
+     * @throws IOException if length is negative
+     */
+    private static int skip(byte[] buffer, int length, int position) throws IOException {
+        if (length - position < 4) {
+            return -1;
+        }
+        int size = readInt(buffer, position);
+        if (size < 0) {
+            throw new IOException("Binary file is corrupted! ");
+        }
+        if (size > length - position - 4) {
+            return -1;
+        }
+        return position + 4 + size;
+    }
+
+    private static int readInt(byte[] buffer, int position) {
+        return (buffer[position] & 0xff) << 24 | (buffer[position + 1] & 0xff) << 16
+                | (buffer[position + 2] & 0xff) << 8 | (buffer[position + 3] & 0xff);
+    }
+
+    /**
+     * Parser thread, decode chunks and store entries in batches until END is received. After a failure, chunks are
+     * still taken and dropped so that reader never blocks on a full queue.
+     *
+     * @param chunks queue from reader
+     */
+    private void parse(BlockingQueue<Chunk> chunks) {
+        ArrayList<String> decoded = new ArrayList<>();     // key, value, key, value...
+        String[] keys = new String[BATCH];
+        String[] values = new String[BATCH];
+        try {
+            while (true) {
+                Chunk chunk = chunks.take();
+                if (chunk == END) {
+                    return;
+                }
+                if (failure.get() != null) {
+                    continue;
+                }
+                try {
+                    decoded.clear();
+                    decode(chunk.data, decoded);
+                    if (!awaitTurn(chunk.sequence)) {
+                        continue;
+                    }
+                    int n = 0;
+                    for (int i = 0; i < decoded.size(); i += 2) {
+                        keys[n] = decoded.get(i);
+                        values[n] = decoded.get(i + 1);
+                        n++;
+                        if (n == BATCH) {
+                            flush(keys, values, n);
+                            n = 0;
+                        }
+                    }
+                    flush(keys, values, n);
+                    bytes.addAndGet(chunk.data.length);
+                    synchronized (turn) {
+                        stored++;
+                        turn.notifyAll();
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                    synchronized (turn) {
+                        turn.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Decode all records of a chunk.
+     *
+     * @param chunk   records that end at a record boundary
+     * @param decoded receives key and value of each record, one after another
+     */
+    private void decode(byte[] chunk, ArrayList<String> decoded) {
+        int position = 0;
+        while (position < chunk.length) {
+            if (format == CSV) {
+                int end = position;
+                while (end < chunk.length && chunk[end] != '\n') {
+                    end++;
+                }
+                int lineEnd = end > position && chunk[end - 1] == '\r' ? end - 1 : end;
+                int comma = position;
+                while (comma < lineEnd && chunk[comma] != ',') {
+                    comma++;
+                }
+                if (comma < lineEnd) {
+                    decoded.add(new String(chunk, position, comma - position, StandardCharsets.UTF_8));
+                    decoded.add(new String(chunk, comma + 1, lineEnd - comma - 1, StandardCharsets.UTF_8));
+                } else if (lineEnd > position) {
+                    bad.incrementAndGet();
+                }
+                position = end + 1;
+            } else {
+                int size = readInt(chunk, position);
+                decoded.add(new String(chunk, position + 4, size, StandardCharsets.UTF_8));
+                position += 4 + size;
+                size = readInt(chunk, position);
+                decoded.add(new String(chunk, position + 4, size, StandardCharsets.UTF_8));
+                position += 4 + size;
+            }
+        }
+    }
+
+    /**
+     * Wait until all chunks before given one are stored.
+     *
+     * @param sequence number of chunk, from 0 in file order
+     * @return true if it is turn of chunk, false if loading has failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean awaitTurn(long sequence) throws InterruptedException {
+        synchronized (turn) {
+            while (stored != sequence && failure.get() == null) {
+                turn.wait();
+            }
+            return failure.get() == null;
+        }
+    }
+
+    private void flush(String[] keys, String[] values, int n) {
+        if (n == 0) {
+            return;
+        }
+        store.putAll(keys, values, n);
+        entries.addAndGet(n);
+    }
+
+    /**
+     * Print progress every second until interrupted.
+     *
+     * @param start time that loading started
+     */
+    private void report(long start) {
+        long last = 0;
+        try {
+            while (true) {
+                Thread.sleep(REPORT_MILLIS);
+                long count = entries.get();
+                System.out.println(String.format("Bulk load: %d entries, %.1f MB in %d s, %.0f entries/s. ",
+                        count, bytes.get() / 1048576.0, (System.currentTimeMillis() - start) / 1000,
+                        (count - last) * 1000.0 / REPORT_MILLIS));
+                last = count;
+            }
+        } catch (InterruptedException e) {
+
+            /* Loading done */
+        }
+    }
+
+    /**
+     * Chunk of records, numbered in file order.
+     */
+    private static final class Chunk {
+        final byte[] data;
+        final long sequence;
+
+        Chunk(byte[] data, long sequence) {
+            this.data = data;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 import java.io.*;
-import java.net.Socket;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * TCP Client for Key-Value store.
@@ -8,11 +13,33 @@ import java.net.UnknownHostException;
  * <p>
  * Command format:
  * <code>java Client [server] [operation] [key] [value]</code>
- * <code>[server]</code> is the host name or IP of the server (possibly localhost for testing)
+ * <code>[server]</code> is the host name or IP of the server (possibly localhost for testing),
+ * or <code>unix:[path]</code> for Unix domain socket of server that runs with <code>-Dkv.unix.path=[path]</code>
  * <code>[operation]</code> can be GET, SET, or STATS
  * <code>[key]</code> and <code>[value]</code> are strings used in GET and SET.
  * MULTIGET & MULTIGET Support:
  * <code>java client [server] [operation] [key] [value] [key 2] [value 2] ... [key n] [value n]</code>
+ * Atomic operations:
+ * <code>java Client [server] gets [key]</code> returns value and its CAS stamp.
+ * <code>java Client [server] cas [key] [value] [CAS stamp]</code> stores value only if it is not modified since GETS.
+ * <code>java Client [server] add|replace [key] [value]</code> stores value only if key is absent / present.
+ * <code>java Client [server] incr|decr [key] [delta]</code> changes a numeric value.
+ * Partial value operations:
+ * <code>java Client [server] append|prepend [key] [value]</code> adds value at end / start of existing value.
+ * <code>java Client [server] getrange [key] [offset] [length]</code> reads part of value.
+ * UDP (server must run with <code>-Dkv.udp.port=5556</code>):
+ * <code>java Client [server] udpget [key 1] ... [key n]</code> reads small values over UDP, and falls back to TCP if
+ * value does not fit in one datagram.
+ * Scan (server must run with <code>-Dkv.index.ordered=true</code>):
+ * <code>java Client [server] scan [prefix] [page size]</code> lists keys with given prefix in key order.
+ * <code>java Client [server] range [from] [to] [page size]</code> lists keys in [from, to) in key order.
+ * Dump:
+ * <code>java Client [server] dump [file] [page size]</code> streams all entries of server, to given file in binary
+ * format of BulkLoader.java (so that it can be loaded by another server), or to console if file is not given or is
+ * <code>-</code>.
+ * Keyspace:
+ * <code>java -Dkv.keyspace=[name] Client [server] [operation] ...</code> sends every request to given keyspace of
+ * server (see in Keyspaces.java), default keyspace if not set.
  *
  * @author BorisMirage
  * Time: 2018/09/10 10:05
@@ -21,6 +48,9 @@ import java.net.UnknownHostException;
 
 public class Client {
 
+    private static final int UDP_PORT = 5556;
+    private static final String KEYSPACE = System.getProperty("kv.keyspace");      // null for default keyspace
+
     /**
      * Read input arguments and send message to server.
      * The client use message class (see in Message.java) to construct message body.
@@ -35,17 +65,32 @@ public class Client {
         try {
 
             /* Modify server and port num here, default port num is 5555 */
-            Socket s = new Socket(server, 5555);
-            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            Connection s = Connection.open(server, 5555);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
             DataInputStream in = new DataInputStream(s.getInputStream());
             Message request = new Message(true, false, op);
+            request.setKeyspace(KEYSPACE);
+
+            if (op.equals("get") || op.equals("gets")) {
+
+                /* GET, large values of GETS may be sent back compressed */
+                request.setKey(arr[0]);
+                request.setVal(" ");
+                request.setCompressed(op.equals("gets"));
+            } else if (op.equals("cas")) {
 
-            if (op.equals("get")) {
+                /* CAS */
+                request.setKey(arr[0]);
+                request.setVal(arr[1]);
+                request.setVersion(Long.parseLong(arr[2]));
+            } else if (op.equals("getrange")) {
 
-                /* GET */
+                /* GETRANGE, offset and length go in CAS stamp field */
                 request.setKey(arr[0]);
                 request.setVal(" ");
-            } else if (op.equals("set")) {
+                request.setVersion(BinaryCoder.range(Integer.parseInt(arr[1]), Integer.parseInt(arr[2])));
+            } else if (op.equals("set") || op.equals("add") || op.equals("replace") || op.equals("incr") || op.equals("decr")
+                    || op.equals("append") || op.equals("prepend")) {
 
                 /* SET */
                 request.setKey(arr[0]);
@@ -61,24 +106,16 @@ public class Client {
             MessageCoder encode = new BinaryCoder();
             byte[] requestBytes = encode.toBinary(request);
             out.writeByte((byte) -1);
-            out.writeByte((byte) requestBytes.length);
+            out.writeInt(requestBytes.length);
             out.write(requestBytes);
             out.flush();
 
-            /* Obtain server's response */
-            BinaryCoder receiveDecoder = new BinaryCoder();
-            Message receiveMessage;
+            /* Obtain server's response, status code followed by raw value */
             int length = in.readInt();
             byte[] data = new byte[length];
             in.readFully(data, 0, length);
-            receiveMessage = receiveDecoder.toMsg(data);
-
-            /* Check if this message is correct response */
-            if (receiveMessage.isResponse()) {
-                System.out.println(receiveMessage.getVal());
-            } else {
-                throw new IOException("Error response! ");
-            }
+            Response response = Response.decode(data, op.equals("gets"));
+            print(response, op);
 
             /* Close sockets */
             out.close();
@@ -97,6 +134,237 @@ public class Client {
         }
     }
 
+    /**
+     * Read value over UDP. Request is resent once if there is no answer, and falls back to TCP GETS if value is too
+     * large for a datagram.
+     *
+     * @param server server address
+     * @param key    requesting key
+     * @param id     request ID that matches response to request
+     */
+    private static void udpGet(String server, String key, int id) {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(500);
+            Message request = new Message(true, false, "gets");
+            request.setKeyspace(KEYSPACE);
+            request.setKey(key);
+            request.setVal(" ");
+            request.setCompressed(true);
+            MessageCoder coder = new BinaryCoder();
+            byte[] requestBytes = coder.toBinary(request);
+            ByteBuffer datagram = ByteBuffer.allocate(4 + requestBytes.length);
+            datagram.putInt(id);
+            datagram.put(requestBytes);
+            DatagramPacket packet = new DatagramPacket(datagram.array(), datagram.capacity(), InetAddress.getByName(server), UDP_PORT);
+            byte[] receive = new byte[UdpServer.MAX_DATAGRAM];
+            DatagramPacket response = new DatagramPacket(receive, receive.length);
+
+            for (int attempt = 0; attempt < 2; attempt++) {
+                socket.send(packet);
+                try {
+                    do {
+                        socket.receive(response);
+                    } while (response.getLength() < 5 || ByteBuffer.wrap(receive).getInt() != id);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                byte[] data = new byte[response.getLength() - 4];
+                System.arraycopy(receive, 4, data, 0, data.length);
+                Response message = Response.decode(data, true);
+                if (message.getStatus() == Status.TOO_LARGE) {
+                    running(new String[]{key}, server, "gets");
+                } else {
+                    print(message, "gets");
+                }
+                return;
+            }
+            System.out.println("No response from server. ");
+        } catch (UnknownHostException e) {
+            System.err.println("Error: Unknown Host! ");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Print compact response: value for GET, value and CAS stamp for GETS, status otherwise.
+     *
+     * @param response response from server
+     * @param op       requested operation
+     */
+    private static void print(Response response, String op) {
+        if (response.getStatus() == Status.HIT && op.equals("gets")) {
+            System.out.println(String.format("[%s] CAS: %d", response.getText(), response.getCas()));
+        } else if (response.getStatus() == Status.HIT || (response.getStatus() == Status.OK && op.equals("stats"))) {
+            System.out.println(response.getText());
+        } else {
+            System.out.println(response.getStatus());
+        }
+    }
+
+    /**
+     * Walk SCAN or RANGE result page by page, each page uses a new connection.
+     *
+     * @param server server address
+     * @param op     scan or range
+     * @param key    key prefix for SCAN, lower bound for RANGE
+     * @param to     upper bound (exclusive) for RANGE, empty for no bound
+     * @param count  page size
+     */
+    private static void scan(String server, String op, String key, String to, int count) {
+        String cursor = "";
+        try {
+            do {
+                Connection s = Connection.open(server, 5555);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                DataInputStream in = new DataInputStream(s.getInputStream());
+                Message request = new Message(true, false, op);
+                request.setKeyspace(KEYSPACE);
+                request.setVersion(count);
+                if (op.equals("scan")) {
+                    request.setKey(key);
+                    request.setVal(cursor);
+                } else {
+
+                    /* Smallest key that greater than cursor */
+                    request.setKey(cursor.isEmpty() ? key : cursor + '\0');
+                    request.setVal(to);
+                }
+
+                MessageCoder coder = new BinaryCoder();
+                byte[] requestBytes = coder.toBinary(request);
+                out.writeByte((byte) -1);
+                out.writeInt(requestBytes.length);
+                out.write(requestBytes);
+                out.flush();
+
+                byte[] data = frame(in);
+                if (data.length == 1) {
+
+                    /* Compact status instead of header */
+                    Status status = Status.of(data[0]);
+                    System.out.println(status == Status.NOT_SUPPORTED ? "Ordered index is disabled! " : status.name());
+                    s.close();
+                    return;
+                }
+                Message header = toResponse(data, coder);
+                for (long i = 0; i < header.getVersion(); i++) {
+                    Message entry = read(in, coder);
+                    System.out.println(String.format("[%s] - [%s]", entry.getKey(), entry.getVal()));
+                }
+                cursor = header.getVal();
+
+                out.close();
+                in.close();
+                s.close();
+            } while (!cursor.isEmpty());
+        } catch (UnknownHostException e) {
+            System.err.println("Error: Unknown Host! ");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stream all entries of server in one connection.
+     *
+     * @param server server address
+     * @param file   output file in length-prefixed binary format, or null to print entries
+     * @param count  page size
+     */
+    private static void dump(String server, String file, int count) {
+        try (Connection s = Connection.open(server, 5555)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            Message request = new Message(true, false, "dump");
+            request.setKeyspace(KEYSPACE);
+            request.setKey(" ");
+            request.setVal(" ");
+            request.setVersion(count);
+            MessageCoder coder = new BinaryCoder();
+            byte[] requestBytes = coder.toBinary(request);
+            out.writeByte((byte) -1);
+            out.writeInt(requestBytes.length);
+            out.write(requestBytes);
+            out.flush();
+
+            DataOutputStream dumpFile = file == null ? null
+                    : new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            long total = 0;
+            try {
+                Message header;
+                do {
+                    header = read(in, coder);
+                    for (long i = 0; i < header.getVersion(); i++) {
+                        Message entry = read(in, coder);
+                        if (dumpFile == null) {
+                            System.out.println(String.format("[%s] - [%s]", entry.getKey(), entry.getVal()));
+                        } else {
+                            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                            byte[] val = entry.getVal().getBytes(StandardCharsets.UTF_8);
+                            dumpFile.writeInt(key.length);
+                            dumpFile.write(key);
+                            dumpFile.writeInt(val.length);
+                            dumpFile.write(val);
+                        }
+                        total++;
+                    }
+                } while (!header.getVal().isEmpty());
+            } finally {
+                if (dumpFile != null) {
+                    dumpFile.close();
+                }
+            }
+            if (dumpFile != null) {
+                System.out.println(String.format("Dumped %d entries to %s", total, file));
+            }
+        } catch (UnknownHostException e) {
+            System.err.println("Error: Unknown Host! ");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read one response message from server.
+     *
+     * @param in    socket input stream
+     * @param coder decoder
+     * @return response message
+     * @throws IOException if read failed or message is not a response
+     */
+    private static Message read(DataInputStream in, MessageCoder coder) throws IOException {
+        return toResponse(frame(in), coder);
+    }
+
+    /**
+     * Read one length-prefixed frame from server.
+     *
+     * @param in socket input stream
+     * @return frame bytes
+     * @throws IOException if read failed
+     */
+    private static byte[] frame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte[] data = new byte[length];
+        in.readFully(data, 0, length);
+        return data;
+    }
+
+    /**
+     * @param data  frame bytes
+     * @param coder decoder
+     * @return response message
+     * @throws IOException if frame is not a response message
+     */
+    private static Message toResponse(byte[] data, MessageCoder coder) throws IOException {
+        Message response = coder.toMsg(data);
+        if (!response.isResponse()) {
+            throw new IOException("Error response! ");
+        }
+        return response;
+    }
+
     /**
      * Main client function.
      * Run this client with correct arguments.
@@ -114,8 +382,9 @@ public class Client {
             System.exit(-1);
         }
         String op = args[1].toLowerCase();
+        String server = Connection.isUnix(args[0]) ? args[0] : args[0].toLowerCase();
 
-        if (!op.equals("exit") && !op.equals("stats") && !op.equals("get") && !op.equals("set") && !op.equals("multiget") && !op.equals("multiset")) {
+        if (!Message.isSupported(op) && !op.equals("multiget") && !op.equals("multiset") && !op.equals("udpget")) {
 
             /* Avoid error */
             throw new IllegalArgumentException("Arguments error! ");
@@ -127,7 +396,7 @@ public class Client {
             for (int i = 2; i < args.length; i++) {
                 arr = new String[2];
                 arr[0] = args[i];
-                running(arr, args[0].toLowerCase(), "get");
+                running(arr, server, "get");
             }
         } else if (op.equals("set") || op.equals("multiset")) {
             for (int i = 2; i < args.length; i += 2) {
@@ -141,10 +410,52 @@ public class Client {
                     System.out.println("Do not find last key's correspond value! ");
                     System.exit(-1);
                 }
-                running(arr, args[0].toLowerCase(), "set");
+                running(arr, server, "set");
+            }
+        } else if (op.equals("gets")) {
+            for (int i = 2; i < args.length; i++) {
+                arr = new String[]{args[i]};
+                running(arr, server, op);
+            }
+        } else if (op.equals("cas")) {
+            if (args.length != 5) {
+                System.out.println("CAS requires key, value and CAS stamp! ");
+                System.exit(-1);
+            }
+            running(new String[]{args[2], args[3], args[4]}, server, op);
+        } else if (op.equals("getrange")) {
+            if (args.length != 5) {
+                System.out.println("GETRANGE requires key, offset and length! ");
+                System.exit(-1);
+            }
+            running(new String[]{args[2], args[3], args[4]}, server, op);
+        } else if (op.equals("add") || op.equals("replace") || op.equals("incr") || op.equals("decr")
+                || op.equals("append") || op.equals("prepend")) {
+            if (args.length != 4) {
+                System.out.println("Do not find key's correspond value! ");
+                System.exit(-1);
+            }
+            running(new String[]{args[2], args[3]}, server, op);
+        } else if (op.equals("udpget")) {
+            for (int i = 2; i < args.length; i++) {
+                udpGet(server, args[i], i);
+            }
+        } else if (op.equals("scan")) {
+            String prefix = args.length > 2 ? args[2] : "";
+            int count = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+            scan(server, op, prefix, "", count);
+        } else if (op.equals("range")) {
+            if (args.length < 4) {
+                System.out.println("RANGE requires lower and upper bound! ");
+                System.exit(-1);
             }
+            int count = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+            scan(server, op, args[2], args[3], count);
+        } else if (op.equals("dump")) {
+            int count = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+            dump(server, args.length > 2 && !args[2].equals("-") ? args[2] : null, count);
         } else if (op.equals("stats") || op.equals("exit")) {
-            running(arr, args[0].toLowerCase(), args[1].toLowerCase());
+            running(arr, server, args[1].toLowerCase());
         } else {
 
             /* Avoid error */
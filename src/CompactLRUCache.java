@@ -0,0 +1,730 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Compact LRU store that keeps no object per entry.
+ * <p>
+ * Entries live in parallel primitive arrays indexed by entry number: LRU links, hash, flags, CAS stamp, and the
+ * offset and lengths of its bytes. Key and value are stored together as UTF-8 bytes in one shared byte arena.
+ * Key index is an open-addressing hash table of entry numbers with linear probing, and deletion shifts later entries
+ * back instead of leaving tombstones. Unused entry numbers are linked through <code>next</code>.
+ * <p>
+ * Arena is cut into chunks of size classes that grow by 1.5x and 2x in turn (16, 24, 32, 48, 64 ...), a freed chunk
+ * goes to free list of its class, next offset is written in the chunk itself. A new chunk is taken from free list of
+ * its class, or from unused end of arena, and arena doubles until its limit. Besides the LRU list of all entries,
+ * each class keeps an LRU list of its own entries. When arena is full, least recently used entry of the needed class
+ * is evicted and its chunk reused, same as memcached does per slab class. If the class has no entry, least recently
+ * used entries of any class are evicted until enough bytes are free, then live chunks are slid down to the start of
+ * arena, so that free chunks of every class merge into its unused end. Hence a new size class never flushes store.
+ * <p>
+ * For small values this takes about 54 bytes plus rounded key and value bytes per entry, against well over 100 bytes
+ * of objects per entry in LRUCache. Arrays are sized by capacity up front. Ordered index is not supported, hence SCAN
+ * and RANGE are not available, while DUMP walks entry numbers in order. All operations synchronize on the store.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 00:10
+ * Created with IntelliJ IDEA
+ */
+
+public class CompactLRUCache implements KeyValueStore {
+    private static final int NONE = -1;
+    private static final int CLASSES = 48;
+    private static final int INITIAL_ARENA = 1024 * 1024;
+    private static final int MIN_ARENA = 4 * 1024 * 1024;      // holds any value a client can send, see fits()
+
+    private final int capacity;
+    private final ValueCodec codec;     // null if compression is disabled
+
+    /* Entries */
+    private final int[] previous;       // towards most recently used, NONE if it is head
+    private final int[] next;       // towards least recently used, NONE if it is tail, or next unused entry
+    private final int[] hashes;
+    private final int[] offsets;        // chunk in arena
+    private final int[] keyLengths;     // -1 if entry is unused
+    private final int[] valueLengths;
+    private final int[] flags;
+    private final long[] stamps;        // CAS stamps
+    private final boolean[] packed;     // value bytes are compressed (see in ValueCodec.java)
+    private final byte[] classes;       // size class of chunk
+    private final int[] classPrevious;      // LRU list of the same class
+    private final int[] classNext;
+    private int head = NONE;
+    private int tail = NONE;
+    private int unused = 0;     // first unused entry
+    private int count = 0;
+    private int packedCount = 0;
+    private long casCounter = 0;
+
+    /* Key index */
+    private final int[] table;      // entry + 1, 0 for empty
+    private final int mask;
+
+    /* Arena */
+    private byte[] arena;
+    private final int maxArena;
+    private int top = 0;        // arena above this offset is unused
+    private final int[] freeChunks = new int[CLASSES];       // first free chunk of each class, NONE if empty
+    private final int[] classHeads = new int[CLASSES];
+    private final int[] classTails = new int[CLASSES];
+    private int used = 0;       // bytes of allocated chunks
+    private int rewritten = NONE;       // entry whose chunk is being replaced, it owns no chunk meanwhile
+
+    private long hits = 0;
+    private long misses = 0;
+    private Consumer<String> listener;
+
+    /**
+     * @param capacity max entries
+     * @param maxBytes max arena size in bytes, at least 4 MB is used
+     * @param codec    value codec, or null to disable compression
+     * @throws IllegalArgumentException if capacity is less than 1
+     */
+    public CompactLRUCache(int capacity, int maxBytes, ValueCodec codec) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.codec = codec;
+        previous = new int[this.capacity];
+        next = new int[this.capacity];
+        hashes = new int[this.capacity];
+        offsets = new int[this.capacity];
+        keyLengths = new int[this.capacity];
+        valueLengths = new int[this.capacity];
+        flags = new int[this.capacity];
+        stamps = new long[this.capacity];
+        packed = new boolean[this.capacity];
+        classes = new byte[this.capacity];
+        classPrevious = new int[this.capacity];
+        classNext = new int[this.capacity];
+        for (int e = 0; e < this.capacity; e++) {
+            next[e] = e + 1 < this.capacity ? e + 1 : NONE;
+            keyLengths[e] = -1;
+        }
+
+        /* Keep load factor at most 0.5, so that probing stays short */
+        int tableSize = Integer.highestOneBit(Math.max(2, this.capacity * 2 - 1)) << 1;
+        table = new int[tableSize];
+        mask = tableSize - 1;
+
+        maxArena = Math.max(MIN_ARENA, maxBytes);
+        arena = new byte[Math.min(INITIAL_ARENA, maxArena)];
+        Arrays.fill(freeChunks, NONE);
+        Arrays.fill(classHeads, NONE);
+        Arrays.fill(classTails, NONE);
+    }
+
+    public String get(String key) {
+        String val;
+        byte[] packedVal = null;
+        synchronized (this) {
+            int e = find(key);
+            if (e == NONE) {
+                misses++;
+                return null;
+            }
+            hits++;
+            touch(e);
+            int start = offsets[e] + keyLengths[e];
+            if (packed[e]) {
+                packedVal = Arrays.copyOfRange(arena, start, start + valueLengths[e]);
+                val = null;
+            } else {
+                val = new String(arena, start, valueLengths[e], StandardCharsets.UTF_8);
+            }
+        }
+        return packedVal == null ? val : ValueCodec.decompress(packedVal);
+    }
+
+    public synchronized boolean read(String key, Node holder) {
+        int e = find(key);
+        if (e == NONE) {
+            misses++;
+            return false;
+        }
+        hits++;
+        touch(e);
+        int start = offsets[e] + keyLengths[e];
+        holder.key = key;
+        if (packed[e]) {
+            holder.val = null;
+            holder.packed = Arrays.copyOfRange(arena, start, start + valueLengths[e]);
+        } else {
+            holder.val = new String(arena, start, valueLengths[e], StandardCharsets.UTF_8);
+            holder.packed = null;
+        }
+        holder.flags = flags[e];
+        holder.cas = stamps[e];
+        return true;
+    }
+
+    public boolean put(String key, String value) {
+        return put(key, value, 0);
+    }
+
+    public boolean put(String key, String value, int flags) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] packedVal = compress(value);
+        byte[] v = packedVal != null ? packedVal : value.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            return store(key, k, v, packedVal != null, flags);
+        }
+    }
+
+    public StoreResult add(String key, String value, int flags) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] packedVal = compress(value);
+        byte[] v = packedVal != null ? packedVal : value.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (find(key) != NONE || !fits(k.length + v.length)) {
+                return StoreResult.NOT_STORED;
+            }
+            store(key, k, v, packedVal != null, flags);
+            return StoreResult.STORED;
+        }
+    }
+
+    public StoreResult replace(String key, String value, int flags) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] packedVal = compress(value);
+        byte[] v = packedVal != null ? packedVal : value.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (find(key) == NONE || !fits(k.length + v.length)) {
+                return StoreResult.NOT_STORED;
+            }
+            store(key, k, v, packedVal != null, flags);
+            return StoreResult.STORED;
+        }
+    }
+
+    public StoreResult cas(String key, String value, int flags, long expected) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] packedVal = compress(value);
+        byte[] v = packedVal != null ? packedVal : value.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            int e = find(key);
+            if (e == NONE) {
+                return StoreResult.NOT_FOUND;
+            }
+            if (stamps[e] != expected) {
+                return StoreResult.EXISTS;
+            }
+            if (!fits(k.length + v.length)) {
+                return StoreResult.NOT_STORED;
+            }
+            store(key, k, v, packedVal != null, flags);
+            return StoreResult.STORED;
+        }
+    }
+
+    /**
+     * Same as LRUCache, value is unsigned 64-bit decimal number, increment wraps and decrement stops at 0.
+     */
+    public synchronized Long incr(String key, long delta, boolean decrement) throws NumberFormatException {
+        int e = find(key);
+        if (e == NONE) {
+            return null;
+        }
+        int start = offsets[e] + keyLengths[e];
+        String current = packed[e]
+                ? ValueCodec.decompress(Arrays.copyOfRange(arena, start, start + valueLengths[e]))
+                : new String(arena, start, valueLengths[e], StandardCharsets.UTF_8);
+        long result = LRUCache.arithmetic(Long.parseUnsignedLong(current), delta, decrement);
+        store(key, key.getBytes(StandardCharsets.UTF_8), Long.toUnsignedString(result).getBytes(StandardCharsets.US_ASCII),
+                false, flags[e]);
+        return result;
+    }
+
+    /**
+     * Values live in arena as plain bytes, so grown value is written again as a whole (uncompressed), unlike the rope
+     * of LRUCache.
+     */
+    public synchronized long append(String key, String value, boolean prepend) {
+        int e = find(key);
+        if (e == NONE) {
+            return -1;
+        }
+        int start = offsets[e] + keyLengths[e];
+        String current = packed[e]
+                ? ValueCodec.decompress(Arrays.copyOfRange(arena, start, start + valueLengths[e]))
+                : new String(arena, start, valueLengths[e], StandardCharsets.UTF_8);
+        if ((long) current.length() + value.length() > MAX_VALUE_LENGTH) {
+            return TOO_LARGE;
+        }
+        String grown = prepend ? value.concat(current) : current.concat(value);
+        byte[] v = grown.getBytes(StandardCharsets.UTF_8);
+        if (!fits(keyLengths[e] + v.length)) {
+            return TOO_LARGE;
+        }
+        store(key, key.getBytes(StandardCharsets.UTF_8), v, false, flags[e]);
+        return grown.length();
+    }
+
+    public String getRange(String key, long offset, int length) {
+        String val = get(key);
+        return val == null ? null : ValueRope.slice(val, offset, length);
+    }
+
+    public synchronized boolean remove(String key) {
+        int e = find(key);
+        if (e == NONE) {
+            return false;
+        }
+        unlinkEntry(e);
+        release(e);
+        if (listener != null) {
+            listener.accept(key);
+        }
+        return true;
+    }
+
+    public synchronized boolean remove(String key, long expected) {
+        int e = find(key);
+        if (e == NONE || stamps[e] != expected) {
+            return false;
+        }
+        return remove(key);
+    }
+
+    public ScanPage scan(String prefix, String cursor, int count) {
+        throw new IllegalStateException("Ordered index is disabled! ");
+    }
+
+    public ScanPage range(String from, boolean inclusive, String to, int count) {
+        throw new IllegalStateException("Ordered index is disabled! ");
+    }
+
+    /**
+     * Walk entry numbers in order, one page each time while holding store lock. An entry never changes its number
+     * while it stays in store, hence it is returned exactly once. Entries added during the walk may reuse a number
+     * that has been passed, so they may be missed.
+     */
+    public DumpCursor dump() {
+        return new DumpCursor() {
+            private int position = 0;
+
+            public ScanPage next(int count) {
+                ScanPage page = new ScanPage(count);
+                byte[][] packedVals = new byte[count][];
+                synchronized (CompactLRUCache.this) {
+                    while (position < capacity && !page.isFull()) {
+                        int e = position++;
+                        if (keyLengths[e] < 0) {
+                            continue;
+                        }
+                        String key = new String(arena, offsets[e], keyLengths[e], StandardCharsets.UTF_8);
+                        int start = offsets[e] + keyLengths[e];
+                        if (packed[e]) {
+                            packedVals[page.size] = Arrays.copyOfRange(arena, start, start + valueLengths[e]);
+                            page.add(key, null, flags[e]);
+                        } else {
+                            page.add(key, new String(arena, start, valueLengths[e], StandardCharsets.UTF_8), flags[e]);
+                        }
+                    }
+                }
+                for (int i = 0; i < page.size; i++) {
+                    if (packedVals[i] != null) {
+                        page.values[i] = ValueCodec.decompress(packedVals[i]);
+                    }
+                }
+                if (position < capacity) {
+                    page.cursor = page.size > 0 ? page.keys[page.size - 1] : "";
+                }
+                return page;
+            }
+
+            public void close() {
+                position = capacity;
+            }
+        };
+    }
+
+    public boolean isOrdered() {
+        return false;
+    }
+
+    public synchronized void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    public synchronized String stats() {
+        return String.valueOf(count);
+    }
+
+    public synchronized int compressedCount() {
+        return packedCount;
+    }
+
+    /**
+     * Values live in arena, deduplication is not supported.
+     */
+    public int dedupValues() {
+        return 0;
+    }
+
+    public int dedupRefs() {
+        return 0;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public String policy() {
+        return "lru";
+    }
+
+    /**
+     * Bytes taken by arena, for comparison with heap used by LRUCache.
+     *
+     * @return arena size in bytes
+     */
+    public synchronized int arenaSize() {
+        return arena.length;
+    }
+
+    private byte[] compress(String value) {
+        return codec == null ? null : codec.compress(value);
+    }
+
+    /**
+     * Store key-value bytes. Caller must hold store lock.
+     *
+     * @param key       new key
+     * @param k         key bytes
+     * @param v         value bytes
+     * @param packedVal if value bytes are compressed
+     * @param flag      opaque client flags
+     * @return true if key was in store and its value is overwritten
+     * @throws IllegalArgumentException if entry is larger than arena could ever hold
+     */
+    private boolean store(String key, byte[] k, byte[] v, boolean packedVal, int flag) {
+        int h = hash(key);
+        int e = find(key);
+        boolean exist = e != NONE;
+        int size = k.length + v.length;
+
+        if (!fits(size)) {
+
+            /* Could never be allocated, even in an empty arena; old value is dropped, same as memcached does for a
+             * SET that is too large */
+            if (exist) {
+                unlinkEntry(e);
+                release(e);
+                if (listener != null) {
+                    listener.accept(key);
+                }
+            }
+            throw new IllegalArgumentException("Entry of " + size + " bytes is too large for arena! ");
+        }
+        if (exist) {
+
+            /* Entry is unlinked while a new chunk is allocated, so that it is never evicted by itself */
+            unlinkEntry(e);
+            if (classOf(size) != classes[e]) {
+                free(offsets[e], classes[e]);
+                rewritten = e;
+                offsets[e] = allocate(size);
+                rewritten = NONE;
+            }
+            if (packed[e]) {
+                packedCount--;
+            }
+        } else {
+            if (count == capacity) {
+                evict();
+            }
+            int offset = allocate(size);
+            e = unused;
+            unused = next[e];
+            offsets[e] = offset;
+            hashes[e] = h;
+            insert(e);
+            count++;
+        }
+        System.arraycopy(k, 0, arena, offsets[e], k.length);
+        System.arraycopy(v, 0, arena, offsets[e] + k.length, v.length);
+        keyLengths[e] = k.length;
+        valueLengths[e] = v.length;
+        classes[e] = (byte) classOf(size);
+        flags[e] = flag;
+        packed[e] = packedVal;
+        if (packedVal) {
+            packedCount++;
+        }
+        stamps[e] = ++casCounter;
+        linkFirst(e);
+        if (listener != null) {
+            listener.accept(key);
+        }
+        return exist;
+    }
+
+    /**
+     * Evict least recently used entry.
+     */
+    private void evict() {
+        evict(tail);
+    }
+
+    /**
+     * Evict given entry, which must be in LRU list.
+     */
+    private void evict(int e) {
+        KvEvents.Eviction event = new KvEvents.Eviction();
+        if (event.isEnabled()) {
+            event.keySize = keyLengths[e];
+            event.policy = "compact-lru";
+            event.commit();
+        }
+        String key = listener == null ? null : new String(arena, offsets[e], keyLengths[e], StandardCharsets.UTF_8);
+        unlinkEntry(e);
+        release(e);
+        if (listener != null) {
+            listener.accept(key);
+        }
+    }
+
+    /**
+     * Remove entry from index and free its chunk and number. Entry must be unlinked from LRU list.
+     */
+    private void release(int e) {
+        delete(e);
+        free(offsets[e], classes[e]);
+        if (packed[e]) {
+            packedCount--;
+        }
+        keyLengths[e] = -1;
+        next[e] = unused;
+        unused = e;
+        count--;
+    }
+
+    /**
+     * Take a chunk that holds given bytes, evict entries if arena is full.
+     *
+     * @param size bytes
+     * @return chunk offset
+     */
+    private int allocate(int size) {
+        int c = classOf(size);
+        int chunk = chunkSize(c);
+        while (true) {
+            if (freeChunks[c] != NONE) {
+                int offset = freeChunks[c];
+                freeChunks[c] = readInt(offset);
+                used += chunk;
+                return offset;
+            }
+            if (arena.length - top >= chunk) {
+                top += chunk;
+                used += chunk;
+                return top - chunk;
+            }
+            if (arena.length < maxArena) {
+                arena = Arrays.copyOf(arena, (int) Math.min(maxArena, Math.max((long) arena.length * 2, (long) top + chunk)));
+                continue;
+            }
+            if (classTails[c] != NONE) {
+                evict(classTails[c]);       // its chunk goes to free list of c
+                continue;
+            }
+
+            /* No chunk of this class to take over, free enough bytes anywhere and merge them by compaction. Entry
+             * that is being rewritten is unlinked and owns no chunk, so arena always has room once list is empty */
+            while (arena.length - used < chunk && tail != NONE) {
+                evict();
+            }
+            compact();
+        }
+    }
+
+    /**
+     * Slide chunks of all entries down to the start of arena in offset order, so that every free chunk becomes part
+     * of its unused end. Costs a sort of entries and one pass over arena, and only runs when a class has neither free
+     * chunk nor entry to evict.
+     */
+    private void compact() {
+        long[] order = new long[count];
+        int n = 0;
+        for (int e = 0; e < capacity; e++) {
+            if (keyLengths[e] >= 0 && e != rewritten) {
+                order[n++] = (long) offsets[e] << 32 | e;
+            }
+        }
+        Arrays.sort(order, 0, n);
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            int e = (int) order[i];
+            System.arraycopy(arena, offsets[e], arena, offset, keyLengths[e] + valueLengths[e]);
+            offsets[e] = offset;
+            offset += chunkSize(classes[e]);
+        }
+        top = offset;
+        Arrays.fill(freeChunks, NONE);
+    }
+
+    /**
+     * Check if an entry of given bytes can be allocated at all. A larger one would evict everything and still not fit.
+     *
+     * @param size key and value bytes
+     * @return true if its chunk is not larger than arena
+     */
+    private boolean fits(int size) {
+        if (size > maxArena) {
+            return false;
+        }
+        int c = classOf(size);
+        return c < CLASSES && chunkSize(c) <= maxArena;
+    }
+
+    private void free(int offset, int c) {
+        writeInt(offset, freeChunks[c]);
+        freeChunks[c] = offset;
+        used -= chunkSize(c);
+    }
+
+    /**
+     * Size class of given bytes: 16, 24, 32, 48, 64, 96 ...
+     */
+    private static int classOf(int size) {
+        if (size <= 16) {
+            return 0;
+        }
+        int k = 32 - Integer.numberOfLeadingZeros(size - 1);        // 2^(k-1) < size <= 2^k
+        return size <= 3 << (k - 2) ? 2 * (k - 5) + 1 : 2 * (k - 4);
+    }
+
+    private static int chunkSize(int c) {
+        return (c & 1) == 0 ? 16 << (c >> 1) : 24 << (c >> 1);
+    }
+
+    private int readInt(int offset) {
+        return (arena[offset] & 0xff) << 24 | (arena[offset + 1] & 0xff) << 16
+                | (arena[offset + 2] & 0xff) << 8 | (arena[offset + 3] & 0xff);
+    }
+
+    private void writeInt(int offset, int value) {
+        arena[offset] = (byte) (value >>> 24);
+        arena[offset + 1] = (byte) (value >>> 16);
+        arena[offset + 2] = (byte) (value >>> 8);
+        arena[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Mark entry as most recently used.
+     */
+    private void touch(int e) {
+        if (e != head) {
+            unlinkEntry(e);
+            linkFirst(e);
+        }
+    }
+
+    private void linkFirst(int e) {
+        previous[e] = NONE;
+        next[e] = head;
+        if (head != NONE) {
+            previous[head] = e;
+        }
+        head = e;
+        if (tail == NONE) {
+            tail = e;
+        }
+        int c = classes[e];
+        classPrevious[e] = NONE;
+        classNext[e] = classHeads[c];
+        if (classHeads[c] != NONE) {
+            classPrevious[classHeads[c]] = e;
+        }
+        classHeads[c] = e;
+        if (classTails[c] == NONE) {
+            classTails[c] = e;
+        }
+    }
+
+    private void unlinkEntry(int e) {
+        if (previous[e] == NONE) {
+            head = next[e];
+        } else {
+            next[previous[e]] = next[e];
+        }
+        if (next[e] == NONE) {
+            tail = previous[e];
+        } else {
+            previous[next[e]] = previous[e];
+        }
+        int c = classes[e];
+        if (classPrevious[e] == NONE) {
+            classHeads[c] = classNext[e];
+        } else {
+            classNext[classPrevious[e]] = classNext[e];
+        }
+        if (classNext[e] == NONE) {
+            classTails[c] = classPrevious[e];
+        } else {
+            classPrevious[classNext[e]] = classPrevious[e];
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return entry of key, or NONE
+     */
+    private int find(String key) {
+        int h = hash(key);
+        byte[] k = null;
+        for (int i = h & mask; table[i] != 0; i = (i + 1) & mask) {
+            int e = table[i] - 1;
+            if (hashes[e] != h) {
+                continue;
+            }
+            if (k == null) {
+                k = key.getBytes(StandardCharsets.UTF_8);
+            }
+            if (keyLengths[e] == k.length
+                    && Arrays.equals(arena, offsets[e], offsets[e] + k.length, k, 0, k.length)) {
+                return e;
+            }
+        }
+        return NONE;
+    }
+
+    private void insert(int e) {
+        int i = hashes[e] & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = e + 1;
+    }
+
+    /**
+     * Remove entry from index. Later entries of the same probe run are shifted back, so no tombstone is needed.
+     */
+    private void delete(int e) {
+        int i = hashes[e] & mask;
+        while (table[i] != e + 1) {
+            i = (i + 1) & mask;
+        }
+        int hole = i;
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = hashes[table[j] - 1] & mask;
+
+            /* Entry at j can move to hole if its home is not in (hole, j] */
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Stream connection over TCP socket or Unix domain socket, so that server threads and clients can use either one.
+ * Server address in form of <code>unix:[path]</code> means Unix domain socket, otherwise it is a host name for TCP.
+ * <p>
+ * Streams of Unix domain socket call channel directly. Streams that returned by <code>Channels</code> lock the
+ * channel for both read and write, which blocks a write while another thread is waiting in read.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 20:50
+ * Created with IntelliJ IDEA
+ */
+
+public class Connection implements Closeable {
+
+    private static final String UNIX_PREFIX = "unix:";
+
+    private final Closeable endpoint;
+    private final InputStream in;
+    private final OutputStream out;
+    private final String peer;
+
+    /**
+     * @param socket connected TCP socket
+     * @throws IOException if socket streams can not be created
+     */
+    public Connection(Socket socket) throws IOException {
+        this.endpoint = socket;
+        this.in = socket.getInputStream();
+        this.out = socket.getOutputStream();
+        this.peer = String.valueOf(socket.getInetAddress());
+    }
+
+    /**
+     * @param channel connected Unix domain socket channel, in blocking mode
+     * @param peer    description of peer
+     */
+    public Connection(SocketChannel channel, String peer) {
+        this.endpoint = channel;
+        this.in = new ChannelInput(channel);
+        this.out = new ChannelOutput(channel);
+        this.peer = peer;
+    }
+
+    /**
+     * Connect to server.
+     *
+     * @param server host name, or <code>unix:[path]</code> for Unix domain socket
+     * @param port   TCP port, ignored for Unix domain socket
+     * @return connection
+     * @throws IOException if server can not be reached
+     */
+    public static Connection open(String server, int port) throws IOException {
+        if (isUnix(server)) {
+            String path = server.substring(UNIX_PREFIX.length());
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(Path.of(path)));
+            return new Connection(channel, server);
+        }
+        return new Connection(new Socket(server, port));
+    }
+
+    /**
+     * Check if server address is a Unix domain socket path.
+     *
+     * @param server server address
+     * @return true if address starts with <code>unix:</code>
+     */
+    public static boolean isUnix(String server) {
+        return server.startsWith(UNIX_PREFIX);
+    }
+
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * @return address of peer
+     */
+    public String getPeer() {
+        return peer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        endpoint.close();
+    }
+
+    /**
+     * Input stream that reads channel without taking channel's blocking lock.
+     */
+    private static class ChannelInput extends InputStream {
+        private final SocketChannel channel;
+        private final byte[] one = new byte[1];
+
+        ChannelInput(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Output stream that writes channel without taking channel's blocking lock.
+     */
+    private static class ChannelOutput extends OutputStream {
+        private final SocketChannel channel;
+
+        ChannelOutput(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
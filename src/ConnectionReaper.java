@@ -0,0 +1,153 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Closes connections that stay too long in one phase, so that slow or stuck clients can not pin server threads.
+ * <p>
+ * A connection is in one of these phases: IDLE while waiting for a new request, READ while rest of a started request
+ * is arriving, WRITE while a response is being produced and written, or NONE when it is not watched (e.g. a SUBSCRIBE
+ * channel). Each phase has its own timeout, 0 disables it. Connection thread only writes phase and deadline into its
+ * watch when phase changes, which usually costs a few volatile accesses and no allocation. One timing wheel entry
+ * is pending for each watch: when it fires and connection has moved on to a later deadline, it is scheduled again
+ * for the remaining time; when deadline has passed, connection is closed, which makes blocked read or write throw,
+ * and closing is counted by phase for stats.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 02:30
+ * Created with IntelliJ IDEA
+ */
+
+class ConnectionReaper {
+
+    static final int NONE = 0;
+    static final int IDLE = 1;
+    static final int READ = 2;
+    static final int WRITE = 3;
+    private static final String[] TIMEOUTS = {"", "idle timeout, closing connection", "read timeout, closing connection",
+            "write timeout, closing connection"};
+
+    private final TimingWheel wheel;
+    private final long[] timeouts = new long[4];        // timeout of each phase in milliseconds, 0 to disable
+    private final AtomicLongArray closed = new AtomicLongArray(4);      // connections closed in each phase
+
+    /**
+     * @param idleMs  longest wait for a new request
+     * @param readMs  longest time to receive rest of a started request
+     * @param writeMs longest time to produce and write a response
+     */
+    ConnectionReaper(long idleMs, long readMs, long writeMs) {
+        timeouts[IDLE] = Math.max(0, idleMs);
+        timeouts[READ] = Math.max(0, readMs);
+        timeouts[WRITE] = Math.max(0, writeMs);
+
+        /* 100 ms resolution, one turn of 512 slots covers about 51 seconds */
+        wheel = new TimingWheel(100, 512, "connection-reaper");
+    }
+
+    /**
+     * Start watching a connection, it is in phase NONE until first <code>expect</code>.
+     *
+     * @param connection connection to close on timeout
+     * @return watch of connection
+     */
+    Watch watch(Connection connection) {
+        return new Watch(connection);
+    }
+
+    /**
+     * @param phase IDLE, READ or WRITE
+     * @return number of connections closed in given phase
+     */
+    long closed(int phase) {
+        return closed.get(phase);
+    }
+
+    /**
+     * @return connections closed in each phase, as text
+     */
+    String report() {
+        return String.format("idle timeouts: %d, read timeouts: %d, write timeouts: %d",
+                closed(IDLE), closed(READ), closed(WRITE));
+    }
+
+    /**
+     * Phase and deadline of one connection.
+     */
+    final class Watch {
+        private final Connection connection;
+        private volatile long deadline;     // in nanoseconds
+        private volatile int phase = NONE;
+        private volatile long firesAt = 0;      // when pending timing wheel entry fires, 0 if none
+
+        private Watch(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Enter given phase, its deadline starts now. Timing wheel is only touched when deadline is earlier than
+         * pending entry, e.g. from IDLE to READ; a later deadline is picked up when pending entry fires.
+         *
+         * @param next IDLE, READ, WRITE, or NONE to stop watching
+         */
+        void expect(int next) {
+            long timeout = timeouts[next];
+            if (timeout == 0) {
+                phase = NONE;
+                return;
+            }
+            long due = System.nanoTime() + timeout * 1000000;
+            deadline = due;
+            phase = next;
+            if (firesAt == 0 || due < firesAt) {
+                synchronized (this) {
+                    if (firesAt == 0 || due < firesAt) {
+                        schedule(due, timeout);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Schedule an entry that fires at given time, earlier entries of this watch become stale. Caller must hold
+         * lock of this watch.
+         */
+        private void schedule(long due, long delayMs) {
+            firesAt = due;
+            wheel.schedule(() -> fire(due), delayMs);
+        }
+
+        /**
+         * Called by timing wheel when an entry is due.
+         *
+         * @param token fire time of entry, entry is stale if it is not pending one
+         */
+        private void fire(long token) {
+            int current;
+            synchronized (this) {
+                if (token != firesAt) {
+                    return;
+                }
+                firesAt = 0;
+
+                /* Phase written before expect saw a pending entry is visible here, so no deadline is lost */
+                current = phase;
+                if (current == NONE) {
+                    return;
+                }
+                long due = deadline;
+                long remaining = due - System.nanoTime();
+                if (remaining > 0) {
+                    schedule(due, (remaining + 999999) / 1000000);
+                    return;
+                }
+                phase = NONE;
+            }
+            closed.incrementAndGet(current);
+            AccessLog.event(AccessLog.WARN, TIMEOUTS[current], connection.getPeer());
+            try {
+                connection.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
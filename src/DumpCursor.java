@@ -0,0 +1,26 @@
+/**
+ * Cursor that walks the whole store in bounded pages, interleaved with normal traffic.
+ * No lock is held between pages, and store is never copied as a whole.
+ * Every entry that stays in store during the walk is returned at least once. Entries that are written or read during
+ * the walk may be returned again (with their latest value), entries that are added during the walk may or may not be
+ * returned.
+ * Cursor must be closed if walk is abandoned before it is done, so that store can drop its position.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 22:20
+ * Created with IntelliJ IDEA
+ */
+
+public interface DumpCursor extends AutoCloseable {
+
+    /**
+     * Return next page of entries. Page cursor is null once walk is done, page may be empty.
+     *
+     * @param count max entries in page
+     * @return next page
+     */
+    ScanPage next(int count);
+
+    @Override
+    void close();
+}
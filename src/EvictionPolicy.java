@@ -0,0 +1,68 @@
+/**
+ * Eviction policy of LRUCache. Policy keeps resident nodes in one or more lists and decides which node is evicted
+ * when a new node is admitted to a full cache. Cache calls policy while holding its lock.
+ * <p>
+ * Lists may also contain marker nodes of dump cursors (nodes without key), policy must never evict them.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 23:10
+ * Created with IntelliJ IDEA
+ */
+
+interface EvictionPolicy {
+
+    /**
+     * Create policy by name.
+     *
+     * @param name     lru or arc
+     * @param capacity cache capacity
+     * @return policy
+     * @throws IllegalArgumentException if name is unknown
+     */
+    static EvictionPolicy of(String name, int capacity) {
+        switch (name.toLowerCase()) {
+            case "lru":
+                return new LruPolicy();
+            case "arc":
+                return new ArcPolicy(capacity);
+            default:
+                throw new IllegalArgumentException("Unknown eviction policy: " + name);
+        }
+    }
+
+    /**
+     * New node is stored.
+     *
+     * @param node new node
+     * @param full true if cache is full, then one resident node must be evicted
+     * @return evicted node, already removed from lists, or null if cache is not full
+     */
+    Node admit(Node node, boolean full);
+
+    /**
+     * Resident node is read or overwritten.
+     *
+     * @param node accessed node
+     */
+    void access(Node node);
+
+    /**
+     * Resident node is removed by client.
+     *
+     * @param node removed node
+     */
+    void remove(Node node);
+
+    /**
+     * Lists of resident nodes in the order that dump cursor walks them. A node only moves from a list to the same or
+     * a later list, hence walking each list from its end to its head never misses a node.
+     *
+     * @return lists
+     */
+    NodeList[] lists();
+
+    /**
+     * @return policy name
+     */
+    String name();
+}
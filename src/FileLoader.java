@@ -0,0 +1,76 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Value loader backed by a CSV file, a stand-in for a real database.
+ * <p>
+ * File has the same format as CSV of BulkLoader.java, one <code>[key],[value]</code> per line. File is read into
+ * memory, and read again when its modification time changes, so that a test can change source values while server
+ * runs. Optional latency is added to every load, to look like a remote call.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 03:30
+ * Created with IntelliJ IDEA
+ */
+
+public class FileLoader implements ValueLoader {
+
+    private final File file;
+    private final long latencyMs;
+    private volatile Map<String, String> values = new HashMap<>();
+    private volatile long modified = -1;
+
+    /**
+     * @param path      CSV file
+     * @param latencyMs time that every load takes, 0 for none
+     * @throws IOException if file can not be read
+     */
+    public FileLoader(String path, long latencyMs) throws IOException {
+        this.file = new File(path);
+        this.latencyMs = Math.max(0, latencyMs);
+        refresh();
+    }
+
+    public String load(String key) throws IOException {
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Load interrupted! ");
+            }
+        }
+        if (file.lastModified() != modified) {
+            refresh();
+        }
+        return values.get(key);
+    }
+
+    /**
+     * Read whole file again if it has changed.
+     */
+    private synchronized void refresh() throws IOException {
+        long time = file.lastModified();
+        if (time == modified) {
+            return;
+        }
+        Map<String, String> loaded = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma >= 0) {
+                    loaded.put(line.substring(0, comma), line.substring(comma + 1));
+                }
+            }
+        }
+        values = loaded;
+        modified = time;
+    }
+}
@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Streaming heavy-hitters tracker that finds the hottest keys by request rate and by bytes served.
+ * <p>
+ * Each window slot holds two Space-Saving summaries with a fixed number of counters, one counts requests and one
+ * counts bytes. Space-Saving guarantees that any key whose count is larger than total / counters is kept, and its
+ * count is over-estimated by at most the smallest counter. Slots are rotated by time, so report covers a sliding
+ * window of the last <code>slots</code> slots.
+ * <p>
+ * Only one of <code>sampleRate</code> requests is recorded (counted as <code>sampleRate</code>), hence requests that
+ * are not sampled only cost one random number.
+ * <p>
+ * Keys are split by hash into stripes, each with its own summaries, slots and lock, so that request threads that
+ * record different keys rarely wait for each other. A key always falls into the same stripe, hence stripes hold
+ * disjoint keys and report just merges them. Byte counts are always of uncompressed value.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 19:00
+ * Created with IntelliJ IDEA
+ */
+
+public class HotKeyTracker {
+
+    private static final int STRIPES = 16;      // power of two
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final int slots;
+    private final long slotMillis;
+    private final long startMillis = System.currentTimeMillis();
+    private final int sampleRate;
+
+    /**
+     * @param counters   counters in each summary of each stripe, should be several times larger than reported top K
+     * @param slots      number of time slots in sliding window
+     * @param slotMillis length of each time slot in milliseconds
+     * @param sampleRate record one of every sampleRate requests, 1 to record all
+     */
+    public HotKeyTracker(int counters, int slots, long slotMillis, int sampleRate) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(counters, slots, now / slotMillis);
+        }
+        this.slots = slots;
+        this.slotMillis = slotMillis;
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * Record one request.
+     *
+     * @param key       requested key
+     * @param byteCount uncompressed bytes of value that served to or received from client
+     */
+    public void record(String key, int byteCount) {
+        int rate = sampleRate;
+        if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return;
+        }
+        int h = key.hashCode();
+        Stripe stripe = stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+        synchronized (stripe) {
+            int slot = stripe.rotate(System.currentTimeMillis() / slotMillis);
+            stripe.requests[slot].add(key, rate);
+            if (byteCount > 0) {
+                stripe.bytes[slot].add(key, (long) byteCount * rate);
+            }
+        }
+    }
+
+    /**
+     * Report top K keys by request rate and by bytes served, both per second over the sliding window.
+     *
+     * @param k number of keys in each list
+     * @return report text
+     */
+    public String report(int k) {
+        long now = System.currentTimeMillis();
+        HashMap<String, Long> requestCounts = new HashMap<>();
+        HashMap<String, Long> byteCounts = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.rotate(now / slotMillis);
+                merge(stripe.requests, requestCounts);
+                merge(stripe.bytes, byteCounts);
+            }
+        }
+        long window = Math.min((slots - 1) * slotMillis + now % slotMillis, now - startMillis);
+        double seconds = Math.max(window, 1) / 1000.0;
+        return String.format("Hot keys by requests/s: %s. Hot keys by bytes/s: %s. ",
+                format(top(requestCounts, k), seconds), format(top(byteCounts, k), seconds));
+    }
+
+    /**
+     * Add counts of all slots into merged counts.
+     *
+     * @param summaries summaries of all slots of a stripe
+     * @param merged    key - count
+     */
+    private static void merge(SpaceSaving[] summaries, HashMap<String, Long> merged) {
+        for (SpaceSaving summary : summaries) {
+            for (int i = 0; i < summary.size; i++) {
+                merged.merge(summary.keys[i], summary.counts[i], Long::sum);
+            }
+        }
+    }
+
+    /**
+     * Return top K keys of merged counts.
+     *
+     * @param merged key - count
+     * @param k      number of keys
+     * @return top K key - count pairs, largest first
+     */
+    private static List<Map.Entry<String, Long>> top(HashMap<String, Long> merged, int k) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(merged.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return entries.subList(0, Math.min(k, entries.size()));
+    }
+
+    private static String format(List<Map.Entry<String, Long>> top, double seconds) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : top) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format("[%s] %.1f", entry.getKey(), entry.getValue() / seconds));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Summaries of one stripe of keys, one pair for each time slot. Guarded by its own monitor.
+     */
+    private static class Stripe {
+        final SpaceSaving[] requests;
+        final SpaceSaving[] bytes;
+        long currentSlot;       // time slot that is being recorded
+
+        Stripe(int counters, int slots, long slot) {
+            requests = new SpaceSaving[slots];
+            bytes = new SpaceSaving[slots];
+            for (int i = 0; i < slots; i++) {
+                requests[i] = new SpaceSaving(counters);
+                bytes[i] = new SpaceSaving(counters);
+            }
+            currentSlot = slot;
+        }
+
+        /**
+         * Move to given time slot, clear slots that are out of window. Caller must hold lock of stripe.
+         *
+         * @param slot current time in slots
+         * @return index of current slot
+         */
+        int rotate(long slot) {
+            long steps = Math.min(slot - currentSlot, requests.length);
+            for (long i = 1; i <= steps; i++) {
+                int index = (int) ((currentSlot + i) % requests.length);
+                requests[index].clear();
+                bytes[index].clear();
+            }
+            if (slot > currentSlot) {
+                currentSlot = slot;
+            }
+            return (int) (currentSlot % requests.length);
+        }
+    }
+
+    /**
+     * Space-Saving summary. Counters are kept in a binary min-heap, so that the smallest counter can be replaced when
+     * a new key arrives and all counters are in use.
+     */
+    private static class SpaceSaving {
+        final String[] keys;
+        final long[] counts;
+        final HashMap<String, Integer> position = new HashMap<>();      // key - index in heap
+        int size = 0;
+
+        SpaceSaving(int capacity) {
+            keys = new String[capacity];
+            counts = new long[capacity];
+        }
+
+        void add(String key, long count) {
+            Integer i = position.get(key);
+            if (i != null) {
+                counts[i] += count;
+                down(i);
+                return;
+            }
+            if (size < keys.length) {
+                keys[size] = key;
+                counts[size] = count;
+                position.put(key, size);
+                up(size++);
+                return;
+            }
+
+            /* Replace smallest counter, new key inherits its count as error */
+            position.remove(keys[0]);
+            keys[0] = key;
+            counts[0] += count;
+            position.put(key, 0);
+            down(0);
+        }
+
+        void clear() {
+            position.clear();
+            for (int i = 0; i < size; i++) {
+                keys[i] = null;
+            }
+            size = 0;
+        }
+
+        private void up(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (counts[parent] <= counts[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void down(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && counts[left] < counts[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && counts[right] < counts[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            String key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            long count = counts[a];
+            counts[a] = counts[b];
+            counts[b] = count;
+            position.put(keys[a], a);
+            position.put(keys[b], b);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Track which client read which key, and push invalidation to client when key is changed.
+ * Client opens a SUBSCRIBE connection and receives a client ID, later TRACK requests (GETS with client ID) register
+ * the key for this client. When the key is written, removed or evicted, every client that tracks it receives one
+ * INVALIDATE message, and tracking of the key is cleared until client reads it again.
+ * Cache only offers changed keys to a queue, messages are encoded by a background thread.
+ * <p>
+ * Every subscriber has its own bounded queue and writer thread, so that a client that stops reading never holds up
+ * other clients. A subscriber whose queue overflows is dropped and its connection is closed; its near cache then
+ * stops trusting local values. Keys of a subscriber are untracked when it disconnects. Tracking table holds at most
+ * <code>maxKeys</code> keys, when it is full a tracked key is invalidated early to make room, same as Redis does.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 18:10
+ * Created with IntelliJ IDEA
+ */
+
+public class InvalidationTracker implements Consumer<String> {
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ConcurrentHashMap<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Long>> readers = new ConcurrentHashMap<>();      // key - client IDs
+    private final BlockingQueue<Invalidation> queue = new LinkedBlockingQueue<>();
+    private final BinaryCoder encoder = new BinaryCoder();
+    private final int maxKeys;
+    private final int queueSize;
+
+    /**
+     * Key and clients that should be notified.
+     */
+    private static class Invalidation {
+        String key;
+        Set<Long> clients;
+
+        Invalidation(String key, Set<Long> clients) {
+            this.key = key;
+            this.clients = clients;
+        }
+    }
+
+    /**
+     * One invalidation channel: pending messages, tracked keys and writer thread.
+     */
+    private class Subscriber {
+        final long id;
+        final DataOutputStream out;
+        final Closeable connection;
+        final BlockingQueue<byte[]> pending = new ArrayBlockingQueue<>(queueSize);
+        final Set<String> keys = ConcurrentHashMap.newKeySet();
+        final Thread writer;
+
+        Subscriber(long id, DataOutputStream out, Closeable connection) {
+            this.id = id;
+            this.out = out;
+            this.connection = connection;
+            this.writer = new Thread(this::write, "invalidation-writer-" + id);
+            writer.setDaemon(true);
+        }
+
+        /**
+         * Write pending messages until unsubscribed, flush when queue is empty.
+         */
+        private void write() {
+            try {
+                while (true) {
+                    byte[] bytes = pending.take();
+                    synchronized (out) {
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                        if (pending.isEmpty()) {
+                            out.flush();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+
+                /* Unsubscribed */
+            } catch (IOException e) {
+                unsubscribe(id);
+            }
+        }
+    }
+
+    /**
+     * @param maxKeys   max keys in tracking table
+     * @param queueSize max pending messages of one subscriber before it is dropped
+     */
+    public InvalidationTracker(int maxKeys, int queueSize) {
+        this.maxKeys = Math.max(1, maxKeys);
+        this.queueSize = Math.max(1, queueSize);
+        Thread sender = new Thread(this::send, "invalidation-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Register a subscriber connection.
+     *
+     * @param out        output stream that invalidation messages are written to
+     * @param connection connection of subscriber, closed if subscriber is dropped
+     * @return client ID
+     */
+    public long subscribe(DataOutputStream out, Closeable connection) {
+        long id = nextId.getAndIncrement();
+        Subscriber subscriber = new Subscriber(id, out, connection);
+        subscribers.put(id, subscriber);
+        subscriber.writer.start();
+        return id;
+    }
+
+    /**
+     * Remove a subscriber, stop its writer and untrack its keys.
+     *
+     * @param id client ID
+     */
+    public void unsubscribe(long id) {
+        Subscriber subscriber = subscribers.remove(id);
+        if (subscriber == null) {
+            return;
+        }
+        subscriber.writer.interrupt();
+        for (String key : subscriber.keys) {
+            untrack(id, key);
+        }
+    }
+
+    /**
+     * Record that given client has read given key.
+     *
+     * @param id  client ID
+     * @param key key that client read
+     * @return false if client is not subscribed
+     */
+    public boolean track(long id, String key) {
+        Subscriber subscriber = subscribers.get(id);
+        if (subscriber == null) {
+            return false;
+        }
+
+        /* Add inside compute, so that it can not race with removal of the key's reader set */
+        readers.compute(key, (k, clients) -> {
+            if (clients == null) {
+                clients = ConcurrentHashMap.newKeySet();
+            }
+            clients.add(id);
+            return clients;
+        });
+        subscriber.keys.add(key);
+        if (!subscribers.containsKey(id)) {
+
+            /* Unsubscribed meanwhile, its keys may already have been untracked */
+            untrack(id, key);
+            return false;
+        }
+        if (readers.size() > maxKeys) {
+            makeRoom(key);
+        }
+        return true;
+    }
+
+    /**
+     * Remove one client from reader set of a key.
+     */
+    private void untrack(long id, String key) {
+        readers.computeIfPresent(key, (k, clients) -> {
+            clients.remove(id);
+            return clients.isEmpty() ? null : clients;
+        });
+    }
+
+    /**
+     * Invalidate some tracked key other than given one, so that tracking table shrinks.
+     *
+     * @param keep key that was just tracked
+     */
+    private void makeRoom(String keep) {
+        Iterator<String> keys = readers.keySet().iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!key.equals(keep)) {
+                accept(key);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called by cache when key is written, removed or evicted.
+     *
+     * @param key changed key
+     */
+    @Override
+    public void accept(String key) {
+        Set<Long> clients = readers.remove(key);
+        if (clients != null) {
+            queue.offer(new Invalidation(key, clients));
+        }
+    }
+
+    /**
+     * Background loop that encodes invalidation messages and hands them to subscribers, never blocks on a client.
+     */
+    private void send() {
+        while (true) {
+            Invalidation next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Message message = new Message(false, true, "invalidate");
+            message.setKey(next.key);
+            message.setVal(" ");
+            byte[] bytes;
+            try {
+                bytes = encoder.toBinary(message);
+            } catch (IOException e) {
+                AccessLog.event(AccessLog.WARN, "invalidation not encoded", e);
+                continue;
+            }
+            for (long id : next.clients) {
+                Subscriber subscriber = subscribers.get(id);
+                if (subscriber == null) {
+                    continue;
+                }
+                subscriber.keys.remove(next.key);
+                if (!subscriber.pending.offer(bytes)) {
+                    drop(subscriber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop a subscriber that does not keep up, closing its connection unblocks a write that is stuck.
+     */
+    private void drop(Subscriber subscriber) {
+        AccessLog.event(AccessLog.WARN, "slow invalidation subscriber dropped", subscriber.id);
+        unsubscribe(subscriber.id);
+        try {
+            subscriber.connection.close();
+        } catch (IOException e) {
+
+            /* Already closed */
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.function.Consumer;
+
+/**
+ * Operations of key-value store that shared by server threads.
+ * LRUCache is a single store, PartitionedStore splits keyspace into partitions that each owned by one worker thread.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 19:30
+ * Created with IntelliJ IDEA
+ */
+
+public interface KeyValueStore {
+
+    /**
+     * Longest value in characters that APPEND / PREPEND may grow, same as largest binary request of server, so that a
+     * grown value is never larger than a value that client can store.
+     */
+    int MAX_VALUE_LENGTH = 2 * 1024 * 1024;
+
+    /**
+     * Result of <code>append</code> when grown value would be longer than MAX_VALUE_LENGTH, value is not changed.
+     */
+    long TOO_LARGE = -2;
+
+    /**
+     * @param key requesting key
+     * @return corresponding value, or null.
+     */
+    String get(String key);
+
+    /**
+     * Copy value, compressed value, flags and CAS stamp of given key into holder, as one consistent snapshot.
+     *
+     * @param key    requesting key
+     * @param holder holder that receives fields of stored node (see in Node.java)
+     * @return false if key is not found
+     */
+    boolean read(String key, Node holder);
+
+    /**
+     * Read several keys at once. Store may group keys by owner to save hand-offs.
+     *
+     * @param keys    requesting keys
+     * @param n       number of keys
+     * @param holders holders that receive fields, one for each key
+     * @param found   set to true for each key that found
+     */
+    default void readAll(String[] keys, int n, Node[] holders, boolean[] found) {
+        for (int i = 0; i < n; i++) {
+            found[i] = read(keys[i], holders[i]);
+        }
+    }
+
+    /**
+     * @param key   new key
+     * @param value new value
+     * @return true if key was in store and its value is overwritten
+     * @throws IllegalArgumentException if store can never hold an entry this large, old value of key is removed
+     */
+    boolean put(String key, String value);
+
+    /**
+     * @param key   new key
+     * @param value new value
+     * @param flags opaque client flags
+     * @return true if key was in store and its value is overwritten
+     * @throws IllegalArgumentException if store can never hold an entry this large, old value of key is removed
+     */
+    boolean put(String key, String value, int flags);
+
+    /**
+     * Store several key-value pairs at once, used by bulk loading. Store may take its lock once for the whole batch.
+     *
+     * @param keys   new keys
+     * @param values new values, one for each key
+     * @param n      number of pairs
+     * @throws IllegalArgumentException if store can never hold one of entries, later pairs are not stored
+     */
+    default void putAll(String[] keys, String[] values, int n) {
+        for (int i = 0; i < n; i++) {
+            put(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Store key-value pair only if key is not in store.
+     *
+     * @param key   new key
+     * @param value new value
+     * @param flags opaque client flags
+     * @return STORED, or NOT_STORED if key is already in store
+     */
+    StoreResult add(String key, String value, int flags);
+
+    /**
+     * Store key-value pair only if key is already in store.
+     *
+     * @param key   existing key
+     * @param value new value
+     * @param flags opaque client flags
+     * @return STORED, or NOT_STORED if key is not in store
+     */
+    StoreResult replace(String key, String value, int flags);
+
+    /**
+     * Store key-value pair only if value has not been changed since client read given CAS stamp.
+     *
+     * @param key      existing key
+     * @param value    new value
+     * @param flags    opaque client flags
+     * @param expected CAS stamp that client read before
+     * @return STORED, EXISTS if value has been modified, or NOT_FOUND if key is not in store
+     */
+    StoreResult cas(String key, String value, int flags, long expected);
+
+    /**
+     * Add delta to or subtract it from value that stored as unsigned 64-bit decimal number, atomically. Same as
+     * memcached, increment wraps around at 2^64 and decrement stops at 0. Flags of value are kept.
+     *
+     * @param key       existing key
+     * @param delta     unsigned 64-bit delta (see in Long.parseUnsignedLong)
+     * @param decrement true to subtract delta, false to add it
+     * @return new value as unsigned 64-bit number, or null if key is not found
+     * @throws NumberFormatException if value is not an unsigned 64-bit decimal number
+     */
+    Long incr(String key, long delta, boolean decrement) throws NumberFormatException;
+
+    /**
+     * Add characters at one end of existing value, atomically.
+     *
+     * @param key     existing key
+     * @param value   characters to be added
+     * @param prepend true to add before value, false to add after it
+     * @return new length of value, -1 if key is not found, or TOO_LARGE
+     */
+    long append(String key, String value, boolean prepend);
+
+    /**
+     * Read part of value, without copying the rest of it where store allows.
+     *
+     * @param key    requesting key
+     * @param offset first character, from 0
+     * @param length max number of characters
+     * @return part of value, empty if offset is beyond end, or null if key is not found
+     */
+    String getRange(String key, long offset, int length);
+
+    /**
+     * @param key key to be removed
+     * @return true if key was found and removed
+     */
+    boolean remove(String key);
+
+    /**
+     * Remove key only if its value has not been changed since given CAS stamp was read.
+     *
+     * @param key      existing key
+     * @param expected CAS stamp that was read before
+     * @return true if key was found with that stamp and removed
+     */
+    boolean remove(String key, long expected);
+
+    /**
+     * Return one page of keys that start with given prefix, in key order.
+     *
+     * @param prefix key prefix, empty string for all keys
+     * @param cursor cursor returned by previous page, or null to start from beginning
+     * @param count  max entries in page
+     * @return page in key order
+     * @throws IllegalStateException if store is not ordered
+     */
+    ScanPage scan(String prefix, String cursor, int count);
+
+    /**
+     * Return one page of keys in given range, in key order.
+     *
+     * @param from      lower bound, or null for no bound
+     * @param inclusive if lower bound is included
+     * @param to        exclusive upper bound, or null for no bound
+     * @param count     max entries in page
+     * @return page in key order
+     * @throws IllegalStateException if store is not ordered
+     */
+    ScanPage range(String from, boolean inclusive, String to, int count);
+
+    /**
+     * Open a cursor that walks all entries in bounded pages (see in DumpCursor.java).
+     *
+     * @return cursor, must be closed if walk is abandoned
+     */
+    DumpCursor dump();
+
+    /**
+     * @return true if store keeps an ordered index, i.e. SCAN / RANGE is supported
+     */
+    boolean isOrdered();
+
+    /**
+     * @param listener notified with key when it is written, removed or evicted, must be fast and never block
+     */
+    void setListener(Consumer<String> listener);
+
+    /**
+     * @return number of entries, as text
+     */
+    String stats();
+
+    /**
+     * @return number of entries that are stored compressed, 0 if compression is disabled
+     */
+    int compressedCount();
+
+    /**
+     * @return number of distinct values kept by value deduplication, 0 if it is disabled
+     */
+    int dedupValues();
+
+    /**
+     * @return number of entries that share those values, 0 if deduplication is disabled
+     */
+    int dedupRefs();
+
+    /**
+     * @return number of reads that found key
+     */
+    long hits();
+
+    /**
+     * @return number of reads that did not find key
+     */
+    long misses();
+
+    /**
+     * @return name of eviction policy
+     */
+    String policy();
+}
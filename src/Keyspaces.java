@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Named keyspaces of server. Each keyspace is a separate store with its own capacity (or byte budget), eviction
+ * policy and stats, so that a noisy tenant only evicts its own keys.
+ * <p>
+ * Default keyspace (empty name, or "default") is the store configured by other properties. More keyspaces are
+ * configured by <code>-Dkv.keyspaces=[name]:[capacity]:[policy]:[arena MB],...</code>, where policy is lru (default),
+ * arc, or compact for CompactLRUCache that is bounded by arena bytes as well (arena MB defaults to
+ * <code>kv.arena.mb</code>). For example <code>sessions:100000:arc,batch:500000:compact:32</code>.
+ * Keyspaces are fixed at start, hence lookups need no lock.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 01:30
+ * Created with IntelliJ IDEA
+ */
+
+public class Keyspaces {
+
+    static final String DEFAULT = "default";
+
+    private final Map<String, KeyValueStore> spaces = new LinkedHashMap<>();
+
+    /**
+     * @param defaultStore store of default keyspace
+     */
+    Keyspaces(KeyValueStore defaultStore) {
+        spaces.put(DEFAULT, defaultStore);
+    }
+
+    /**
+     * Create keyspaces from configuration.
+     *
+     * @param defaultStore store of default keyspace
+     * @param spec         keyspace list, see above, or null
+     * @param codec        value codec shared by all keyspaces, or null
+     * @param ordered      if keyspaces of LRUCache keep ordered key index
+     * @param dedup        if keyspaces of LRUCache deduplicate values
+     * @param arenaMB      default arena size of compact keyspaces
+     * @return keyspaces
+     * @throws IllegalArgumentException if spec is malformed, a capacity is less than 1 or a name is used twice
+     */
+    static Keyspaces configure(KeyValueStore defaultStore, String spec, ValueCodec codec, boolean ordered, boolean dedup,
+                               int arenaMB) {
+        Keyspaces keyspaces = new Keyspaces(defaultStore);
+        if (spec == null || spec.isBlank()) {
+            return keyspaces;
+        }
+        for (String entry : spec.split(",")) {
+            String[] fields = entry.trim().split(":");
+            if (fields.length < 2 || fields.length > 4) {
+                throw new IllegalArgumentException("Malformed keyspace: " + entry);
+            }
+            String name = fields[0];
+            int capacity;
+            try {
+                capacity = Integer.parseInt(fields[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed capacity of keyspace: " + entry);
+            }
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Capacity of keyspace must be positive: " + entry);
+            }
+            String policy = fields.length > 2 ? fields[2].toLowerCase() : "lru";
+            KeyValueStore store;
+            if (policy.equals("compact")) {
+                long mb = fields.length > 3 ? Long.parseLong(fields[3]) : arenaMB;
+                store = new CompactLRUCache(capacity, (int) Math.min(Integer.MAX_VALUE - 8, mb * 1024 * 1024), codec);
+            } else {
+                store = new LRUCache(capacity, codec, ordered, policy, dedup);
+            }
+            keyspaces.add(name, store);
+        }
+        return keyspaces;
+    }
+
+    /**
+     * @param name  keyspace name, no whitespace
+     * @param store store of keyspace
+     * @throws IllegalArgumentException if name is invalid or already used
+     */
+    void add(String name, KeyValueStore store) {
+        if (name.isEmpty() || name.chars().anyMatch(Character::isWhitespace)) {
+            throw new IllegalArgumentException("Invalid keyspace name: [" + name + "]");
+        }
+        if (spaces.putIfAbsent(name, store) != null) {
+            throw new IllegalArgumentException("Duplicate keyspace: " + name);
+        }
+    }
+
+    /**
+     * @param name keyspace name, null or empty for default keyspace
+     * @return store of keyspace, or null if there is no such keyspace
+     */
+    KeyValueStore get(String name) {
+        return spaces.get(name == null || name.isEmpty() ? DEFAULT : name);
+    }
+
+    /**
+     * @return store of default keyspace
+     */
+    KeyValueStore defaultStore() {
+        return spaces.get(DEFAULT);
+    }
+
+    /**
+     * @return keyspace names, default first
+     */
+    List<String> names() {
+        return Collections.unmodifiableList(new ArrayList<>(spaces.keySet()));
+    }
+
+    /**
+     * Apply one invalidation listener to every keyspace. Keys of different keyspaces are not told apart, so a client
+     * may drop a near-cached key that did not change, which is safe.
+     *
+     * @param listener listener, or null
+     */
+    void setListener(Consumer<String> listener) {
+        for (KeyValueStore store : spaces.values()) {
+            store.setListener(listener);
+        }
+    }
+
+    /**
+     * @return name, size, policy and hit ratio of every keyspace, separated by semicolons
+     */
+    String report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, KeyValueStore> entry : spaces.entrySet()) {
+            KeyValueStore store = entry.getValue();
+            long hits = store.hits();
+            long reads = hits + store.misses();
+            if (report.length() > 0) {
+                report.append("; ");
+            }
+            report.append(String.format("%s: %s, %s, hit ratio %.4f", entry.getKey(), store.stats(), store.policy(),
+                    reads == 0 ? 0.0 : (double) hits / reads));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,123 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of request lifecycle, shown under "Key-Value Store" in JDK Mission Control.
+ * <p>
+ * Start a recording on a running server with <code>jcmd [pid] JFR.start</code>, no restart is needed.
+ * Events are only built when a recording enables them: <code>shouldCommit()</code> / <code>isEnabled()</code> is
+ * checked before any field is filled, and an event object that is never committed is removed by escape analysis.
+ * Duration events have a threshold, so a default recording only keeps slow ones.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 00:40
+ * Created with IntelliJ IDEA
+ */
+
+public final class KvEvents {
+
+    private KvEvents() {
+    }
+
+    /**
+     * From <code>accept</code> returning to connection thread starting to run.
+     */
+    @Name("kv.ConnectionAccepted")
+    @Label("Connection Accepted")
+    @Category("Key-Value Store")
+    @Description("Time from accept to connection thread start")
+    @StackTrace(false)
+    @Threshold("0 ms")
+    public static class ConnectionAccepted extends Event {
+        @Label("Peer")
+        public String peer;
+
+        @Label("Unix Domain Socket")
+        public boolean unix;
+    }
+
+    /**
+     * Reading request length and body, and decoding it.
+     */
+    @Name("kv.RequestDecoded")
+    @Label("Request Decoded")
+    @Category("Key-Value Store")
+    @Description("Time to read and decode one binary request")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class RequestDecoded extends Event {
+        @Label("Operation")
+        public String op;
+
+        @Label("Request Size")
+        @DataAmount
+        public int size;
+    }
+
+    /**
+     * One store operation.
+     */
+    @Name("kv.StoreOperation")
+    @Label("Store Operation")
+    @Category("Key-Value Store")
+    @Description("Time spent in key-value store, including waiting for its lock")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class StoreOperation extends Event {
+        @Label("Operation")
+        public String op;
+
+        @Label("Hit")
+        @Description("Key was found, or value was stored")
+        public boolean hit;
+
+        @Label("Key Size")
+        @DataAmount
+        public int keySize;
+
+        @Label("Value Size")
+        @DataAmount
+        public int valueSize;
+    }
+
+    /**
+     * Writing and flushing one response.
+     */
+    @Name("kv.ResponseFlushed")
+    @Label("Response Flushed")
+    @Category("Key-Value Store")
+    @Description("Time to write and flush one response")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class ResponseFlushed extends Event {
+        @Label("Status")
+        public String status;
+
+        @Label("Response Size")
+        @DataAmount
+        public int size;
+    }
+
+    /**
+     * Entry evicted to make room, instant event.
+     */
+    @Name("kv.Eviction")
+    @Label("Eviction")
+    @Category("Key-Value Store")
+    @Description("Entry evicted to make room for a new one")
+    @StackTrace(false)
+    public static class Eviction extends Event {
+        @Label("Key Size")
+        @DataAmount
+        public int keySize;
+
+        @Label("Policy")
+        public String policy;
+    }
+}
@@ -1,4 +1,6 @@
-import java.util.HashMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
 
 /**
  * @author BorisMirage
@@ -6,31 +8,99 @@ import java.util.HashMap;
  * Created with IntelliJ IDEA
  */
 
-public class LRUCache {
+public class LRUCache implements KeyValueStore {
     private int capacity;
-    private Node head;
-    private Node end;
+    private EvictionPolicy policy;
+    private long hits = 0;      // GET / READ that found key
+    private long misses = 0;        // GET / READ that did not find key
     private int c = 0;      // count total cache size
-    private HashMap<String, Node> cache = new HashMap<>();
+    private long casCounter = 0;        // unique stamp handed to every stored value
+    private NodeIndex cache;        // key - node, grows incrementally (see in NodeIndex.java)
+    private ValueCodec codec;       // null if compression is disabled
+    private int packed = 0;     // count compressed entries
+    private ConcurrentSkipListSet<String> index;        // ordered keys for SCAN / RANGE, null if disabled
+    private Consumer<String> listener;      // notified when a key is written, removed or evicted
+    private ValuePool pool;     // one copy of each distinct value, null if deduplication is disabled
 
     /**
      * Structure of cache:
-     * Basically, use node to store key and value. A hash map in this cache is to store key-node pair for searching key.
+     * Basically, use node to store key and value. A hash index in this cache is to store key-node pair for searching key.
      * Node works as a double linked list, which contains previous Node and next Node.
      * When <code>put</code> operation finds a existing key, move corresponding node to top of the list.
      * When put a new pair into cache, first check size to avoid oversize, then add this node to top of list.
      * If cache is oversize, then remove last Node in double linked list. And remove corresponding key as well.
+     * All operations synchronize on the cache itself, hence read-modify-write operations such as <code>cas</code> and
+     * <code>incr</code> are atomic.
      *
      * @param capacity cache capacity
      */
     public LRUCache(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Cache that compresses large values before storing them (see in ValueCodec.java).
+     * Compression and decompression are done outside of cache lock.
+     *
+     * @param capacity cache capacity
+     * @param codec    value codec, or null to disable compression
+     */
+    public LRUCache(int capacity, ValueCodec codec) {
+        this(capacity, codec, false);
+    }
+
+    /**
+     * Cache that may also keep keys in an ordered index, so that keys can be scanned by prefix or range.
+     * Index is a concurrent skip list maintained alongside hash index. It is updated under cache lock, while scan
+     * iterates it without holding the lock.
+     *
+     * @param capacity cache capacity
+     * @param codec    value codec, or null to disable compression
+     * @param ordered  true to maintain ordered key index
+     */
+    public LRUCache(int capacity, ValueCodec codec, boolean ordered) {
+        this(capacity, codec, ordered, "lru");
+    }
+
+    /**
+     * Cache with given eviction policy (see in EvictionPolicy.java). LRU keeps one list in recency order, ARC adapts
+     * between recency and frequency by itself.
+     *
+     * @param capacity cache capacity
+     * @param codec    value codec, or null to disable compression
+     * @param ordered  true to maintain ordered key index
+     * @param policy   lru or arc
+     * @throws IllegalArgumentException if policy is unknown
+     */
+    public LRUCache(int capacity, ValueCodec codec, boolean ordered, String policy) {
+        this(capacity, codec, ordered, policy, false);
+    }
+
+    /**
+     * Cache that may also share one copy of each distinct value among all keys that hold it (see in ValuePool.java),
+     * so that memory follows number of distinct values rather than number of keys. Copy is released when last key
+     * that holds it is overwritten, removed or evicted. A value grown by APPEND / PREPEND is pooled again when it is
+     * read as a whole.
+     *
+     * @param capacity cache capacity
+     * @param codec    value codec, or null to disable compression
+     * @param ordered  true to maintain ordered key index
+     * @param policy   lru or arc
+     * @param dedup    true to deduplicate values
+     * @throws IllegalArgumentException if capacity is less than 1 or policy is unknown
+     */
+    public LRUCache(int capacity, ValueCodec codec, boolean ordered, String policy, boolean dedup) {
+        if (capacity < 1) {
+
+            /* Eviction policy must always have a victim when cache is full */
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
         this.capacity = capacity;
-        this.head = new Node();
-        head.previous = null;
-        this.end = new Node();
-        end.next = null;
-        head.next = end;
-        end.previous = head;
+        this.codec = codec;
+        this.index = ordered ? new ConcurrentSkipListSet<>() : null;
+        this.policy = EvictionPolicy.of(policy, capacity);
+        this.cache = new NodeIndex(capacity);
+        this.pool = dedup ? new ValuePool() : null;
     }
 
     /**
@@ -40,12 +110,46 @@ public class LRUCache {
      * @return corresponding value, or null.
      */
     public String get(String key) {
+        String val;
+        byte[] packedVal;
+        synchronized (this) {
+            Node temp = cache.get(key);
+            if (temp == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            policy.access(temp);
+            flatten(temp);
+            val = temp.val;
+            packedVal = temp.packed;
+        }
+        return packedVal == null ? val : ValueCodec.decompress(packedVal);
+    }
+
+    /**
+     * Copy fields of given key's Node into holder while holding cache lock, so that value, flags and CAS stamp are
+     * read together. Same as <code>get</code>, this operation marks the node as most recently used.
+     *
+     * @param key    requesting key
+     * @param holder node that receives fields
+     * @return false if key is not found
+     */
+    public synchronized boolean read(String key, Node holder) {
         Node temp = cache.get(key);
         if (temp == null) {
-            return null;
+            misses++;
+            return false;
         }
-        lastUsed(temp);
-        return temp.val;
+        hits++;
+        policy.access(temp);
+        flatten(temp);
+        holder.key = temp.key;
+        holder.val = temp.val;
+        holder.packed = temp.packed;
+        holder.flags = temp.flags;
+        holder.cas = temp.cas;
+        return true;
     }
 
     /**
@@ -54,90 +158,633 @@ public class LRUCache {
      *
      * @param key   new key
      * @param value new value
+     * @return true if key was in cache and its value is overwritten
+     */
+    public boolean put(String key, String value) {
+        return put(key, value, 0);
+    }
+
+    /**
+     * <code>put</code> operation with client flags (memcached protocol stores an opaque flag with each value).
+     *
+     * @param key   new key
+     * @param value new value
+     * @param flags opaque client flags
+     * @return true if key was in cache and its value is overwritten
+     */
+    public boolean put(String key, String value, int flags) {
+        byte[] packedVal = compress(value);
+        if (pool != null && packedVal == null) {
+
+            /* String caches its hash, so pool lookup under lock does not hash value again */
+            value.hashCode();
+        }
+        synchronized (this) {
+            return store(key, value, packedVal, flags);
+        }
+    }
+
+    /**
+     * Store several key-value pairs while holding cache lock once. Values are compressed before lock is taken.
+     *
+     * @param keys   new keys
+     * @param values new values, one for each key
+     * @param n      number of pairs
+     */
+    public void putAll(String[] keys, String[] values, int n) {
+        byte[][] packedVals = null;
+        if (codec != null) {
+            packedVals = new byte[n][];
+            for (int i = 0; i < n; i++) {
+                packedVals[i] = compress(values[i]);
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < n; i++) {
+                store(keys[i], values[i], packedVals == null ? null : packedVals[i], 0);
+            }
+        }
+    }
+
+    /**
+     * <code>add</code> operation, only store key-value pair if key is not in cache.
+     *
+     * @param key   new key
+     * @param value new value
+     * @param flags opaque client flags
+     * @return STORED, or NOT_STORED if condition is not met
+     */
+    public StoreResult add(String key, String value, int flags) {
+        byte[] packedVal = compress(value);
+        synchronized (this) {
+            if (cache.containsKey(key)) {
+                return StoreResult.NOT_STORED;
+            }
+            store(key, value, packedVal, flags);
+            return StoreResult.STORED;
+        }
+    }
+
+    /**
+     * <code>replace</code> operation, only store key-value pair if key is already in cache.
+     *
+     * @param key   existing key
+     * @param value new value
+     * @param flags opaque client flags
+     * @return STORED, or NOT_STORED if condition is not met
+     */
+    public StoreResult replace(String key, String value, int flags) {
+        byte[] packedVal = compress(value);
+        synchronized (this) {
+            if (!cache.containsKey(key)) {
+                return StoreResult.NOT_STORED;
+            }
+            store(key, value, packedVal, flags);
+            return StoreResult.STORED;
+        }
+    }
+
+    /**
+     * <code>cas</code> (compare-and-swap) operation, only store key-value pair if value has not been changed since
+     * client read the given CAS stamp.
+     *
+     * @param key      existing key
+     * @param value    new value
+     * @param flags    opaque client flags
+     * @param expected CAS stamp that client read before
+     * @return STORED, EXISTS if value has been modified, or NOT_FOUND if key is not in cache
      */
-    public void put(String key, String value) {
+    public StoreResult cas(String key, String value, int flags, long expected) {
+        byte[] packedVal = compress(value);
+        synchronized (this) {
+            Node node = cache.get(key);
+            if (node == null) {
+                return StoreResult.NOT_FOUND;
+            }
+            if (node.cas != expected) {
+                return StoreResult.EXISTS;
+            }
+            store(key, value, packedVal, flags);
+            return StoreResult.STORED;
+        }
+    }
 
+    /**
+     * <code>incr</code> and <code>decr</code> operation, change value that stored as unsigned 64-bit decimal number.
+     * Same as memcached, increment wraps around at 2^64 and decrement stops at 0.
+     *
+     * @param key       existing key
+     * @param delta     unsigned 64-bit delta
+     * @param decrement true to subtract delta, false to add it
+     * @return new value as unsigned 64-bit number, or null if key is not in cache
+     * @throws NumberFormatException if value is not an unsigned 64-bit decimal number
+     */
+    public synchronized Long incr(String key, long delta, boolean decrement) throws NumberFormatException {
         Node node = cache.get(key);
+        if (node == null) {
+            return null;
+        }
+        long result = arithmetic(Long.parseUnsignedLong(node.value()), delta, decrement);
+        store(key, Long.toUnsignedString(result), null, node.flags);
+        return result;
+    }
+
+    /**
+     * Unsigned 64-bit arithmetic of <code>incr</code> and <code>decr</code>.
+     *
+     * @param current   current value
+     * @param delta     unsigned delta
+     * @param decrement true to subtract delta, false to add it
+     * @return current + delta modulo 2^64, or current - delta but not below 0
+     */
+    static long arithmetic(long current, long delta, boolean decrement) {
+        if (!decrement) {
+            return current + delta;
+        }
+        return Long.compareUnsigned(current, delta) < 0 ? 0 : current - delta;
+    }
+
+    /**
+     * <code>append</code> and <code>prepend</code> operation, add characters at one end of existing value.
+     * Value is turned into a rope (see in ValueRope.java) at first append, so later appends only copy added
+     * characters. A compressed value is decompressed outside of cache lock, and operation retries if value changes
+     * meanwhile. Grown value stays uncompressed until it is overwritten.
+     *
+     * @param key     existing key
+     * @param value   characters to be added
+     * @param prepend true to add before value, false to add after it
+     * @return new length of value, -1 if key is not in cache, or TOO_LARGE if grown value would be longer than
+     * MAX_VALUE_LENGTH
+     */
+    public long append(String key, String value, boolean prepend) {
+        String base = null;     // decompressed value of stamp
+        long stamp = 0;
+        while (true) {
+            byte[] packedVal;
+            synchronized (this) {
+                Node node = cache.get(key);
+                if (node == null) {
+                    return -1;
+                }
+                if (node.packed == null || (base != null && node.cas == stamp)) {
+                    long current = node.rope != null ? node.rope.length()
+                            : node.packed == null ? node.val.length() : base.length();
+                    if (current + value.length() > MAX_VALUE_LENGTH) {
+                        return TOO_LARGE;
+                    }
+                    if (node.rope == null) {
+                        node.rope = new ValueRope(node.packed == null ? node.val : base);
+                        if (node.packed != null) {
+                            packed--;
+                        }
+                        release(node);
+                        node.val = null;
+                        node.packed = null;
+                    }
+                    if (prepend) {
+                        node.rope.prepend(value);
+                    } else {
+                        node.rope.append(value);
+                    }
+                    policy.access(node);
+                    node.cas = ++casCounter;
+                    if (listener != null) {
+                        listener.accept(key);
+                    }
+                    return node.rope.length();
+                }
+                packedVal = node.packed;
+                stamp = node.cas;
+            }
+            base = ValueCodec.decompress(packedVal);
+        }
+    }
+
+    /**
+     * <code>getrange</code> operation, read part of value. Counts as one use of key, same as <code>get</code>.
+     * Only requested characters are copied from a rope, and rope is not flattened.
+     *
+     * @param key    requesting key
+     * @param offset first character, from 0
+     * @param length max number of characters
+     * @return part of value, empty if offset is beyond end, or null if key is not in cache
+     */
+    public String getRange(String key, long offset, int length) {
+        String val;
+        byte[] packedVal;
+        synchronized (this) {
+            Node node = cache.get(key);
+            if (node == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            policy.access(node);
+            if (node.rope != null) {
+                return node.rope.substring(offset, length);
+            }
+            val = node.val;
+            packedVal = node.packed;
+        }
+        return ValueRope.slice(packedVal == null ? val : ValueCodec.decompress(packedVal), offset, length);
+    }
 
+    /**
+     * <code>remove</code> operation, delete given key from cache.
+     *
+     * @param key key to be removed
+     * @return true if key was found and removed
+     */
+    public synchronized boolean remove(String key) {
+        Node node = cache.remove(key);
         if (node == null) {
-            Node add = new Node();
-            add.key = key;
-            add.val = value;
-            c++;
-            if (c > capacity) {
-                cache.remove(popEnd().key);
-                addNode(add);
-                cache.put(key, add);
-                c--;
-            } else {
-                addNode(add);
-                cache.put(key, add);
+            return false;
+        }
+        policy.remove(node);
+        c--;
+        if (node.packed != null) {
+            packed--;
+        }
+        release(node);
+        if (index != null) {
+            index.remove(key);
+        }
+        if (listener != null) {
+            listener.accept(key);
+        }
+        return true;
+    }
+
+    /**
+     * Conditional <code>remove</code> operation, delete given key only if its CAS stamp is still expected.
+     *
+     * @param key      existing key
+     * @param expected CAS stamp that was read before
+     * @return true if key was found with that stamp and removed
+     */
+    public synchronized boolean remove(String key, long expected) {
+        Node node = cache.get(key);
+        if (node == null || node.cas != expected) {
+            return false;
+        }
+        return remove(key);
+    }
+
+    /**
+     * <code>scan</code> operation, return one page of keys that start with given prefix.
+     *
+     * @param prefix key prefix, empty string for all keys
+     * @param cursor cursor returned by previous page, or null to start from beginning
+     * @param count  max entries in page
+     * @return page in key order
+     * @throws IllegalStateException if ordered index is disabled
+     */
+    public ScanPage scan(String prefix, String cursor, int count) {
+        if (cursor == null) {
+            return range(prefix, true, ScanPage.prefixEnd(prefix), count);
+        }
+        return range(cursor, false, ScanPage.prefixEnd(prefix), count);
+    }
+
+    /**
+     * <code>range</code> operation, return one page of keys in given range.
+     * Scan does not change LRU order, and cache lock is only held while reading each value.
+     *
+     * @param from      lower bound, or null for no bound
+     * @param inclusive if lower bound is included
+     * @param to        exclusive upper bound, or null for no bound
+     * @param count     max entries in page
+     * @return page in key order
+     * @throws IllegalStateException if ordered index is disabled
+     */
+    public ScanPage range(String from, boolean inclusive, String to, int count) {
+        if (index == null) {
+            throw new IllegalStateException("Ordered index is disabled! ");
+        }
+        ScanPage page = new ScanPage(count);
+        NavigableSet<String> view = from == null ? index : index.tailSet(from, inclusive);
+        for (String key : view) {
+            if (to != null && key.compareTo(to) >= 0) {
+                break;
             }
-        } else {
-            cache.get(key).val = value;
-            this.lastUsed(cache.get(key));
+            if (page.isFull()) {
+                page.cursor = page.keys[page.size - 1];
+                break;
+            }
+            String val;
+            byte[] packedVal;
+            int flags;
+            synchronized (this) {
+                Node node = cache.get(key);
+                if (node == null) {
+                    continue;       // removed after iterator saw it
+                }
+                flatten(node);
+                val = node.val;
+                packedVal = node.packed;
+                flags = node.flags;
+            }
+            page.add(key, packedVal == null ? val : ValueCodec.decompress(packedVal), flags);
+        }
+        return page;
+    }
+
+    /**
+     * <code>dump</code> operation, walk all entries in bounded pages.
+     * If ordered index is maintained, cursor pages through it in key order, same as <code>scan</code>.
+     * Otherwise a marker node is put at least recently used end of each list of eviction policy in turn, and moved
+     * towards head, one page each time while holding cache lock. Entries that are used during the walk jump ahead of
+     * marker and are returned again, evicted entries are always behind marker, hence no entry that stays in cache is
+     * missed. Eviction skips markers. Walk does not change LRU order, and values are decompressed outside of cache
+     * lock.
+     *
+     * @return cursor
+     */
+    public DumpCursor dump() {
+        if (index != null) {
+            return new DumpCursor() {
+                private String cursor = null;
+                private boolean done = false;
+
+                public ScanPage next(int count) {
+                    if (done) {
+                        return new ScanPage(0);
+                    }
+                    ScanPage page = scan("", cursor, count);
+                    cursor = page.cursor;
+                    done = cursor == null;
+                    return page;
+                }
+
+                public void close() {
+                    done = true;
+                }
+            };
         }
+
+        NodeList[] lists = policy.lists();
+        Node marker = new Node();       // marker has no key
+        synchronized (this) {
+            insertBefore(marker, lists[0].end);
+        }
+        return new DumpCursor() {
+            private int list = 0;       // list that marker is in
+            private boolean done = false;
+
+            public ScanPage next(int count) {
+                ScanPage page = new ScanPage(count);
+                if (done) {
+                    return page;
+                }
+                byte[][] packedVals = new byte[count][];
+                synchronized (LRUCache.this) {
+                    while (!page.isFull()) {
+                        Node node = marker.previous;
+                        if (node == lists[list].head) {
+                            unlink(marker);
+                            if (++list == lists.length) {
+                                done = true;
+                                break;
+                            }
+                            insertBefore(marker, lists[list].end);
+                            continue;
+                        }
+
+                        /* Step over node, marker of other walks is stepped over as well */
+                        unlink(marker);
+                        insertBefore(marker, node);
+                        if (node.key != null) {
+                            flatten(node);
+                            packedVals[page.size] = node.packed;
+                            page.add(node.key, node.val, node.flags);
+                        }
+                    }
+                }
+                for (int i = 0; i < page.size; i++) {
+                    if (packedVals[i] != null) {
+                        page.values[i] = ValueCodec.decompress(packedVals[i]);
+                    }
+                }
+                if (!done && page.size > 0) {
+                    page.cursor = page.keys[page.size - 1];
+                } else if (!done) {
+                    page.cursor = "";
+                }
+                return page;
+            }
+
+            public void close() {
+                synchronized (LRUCache.this) {
+                    if (!done) {
+                        unlink(marker);
+                        done = true;
+                    }
+                }
+            }
+        };
     }
 
-    public String stats() {
+    /**
+     * Set listener that is notified with key when it is written, removed or evicted.
+     * Listener is called while holding cache lock, hence it must be fast and never block.
+     *
+     * @param listener key change listener, or null
+     */
+    public synchronized void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * If ordered index is maintained.
+     *
+     * @return true if SCAN / RANGE is supported
+     */
+    public boolean isOrdered() {
+        return index != null;
+    }
+
+    public synchronized String stats() {
         return String.valueOf(cache.size());
     }
 
     /**
-     * Remove given Node.
+     * Number of entries that stored in compressed form.
      *
-     * @param node given Node
+     * @return compressed entries count
      */
-    private void removeNode(Node node) {
-        Node pre = node.previous;
-        Node next = node.next;
-        pre.next = next;
-        next.previous = pre;
+    public synchronized int compressedCount() {
+        return packed;
     }
 
     /**
-     * Move given node next to head node.
-     * Note that this node will be removed.
+     * Number of distinct values kept by deduplication.
      *
-     * @param node
+     * @return distinct values count, 0 if deduplication is disabled
      */
-    private void lastUsed(Node node) {
-        removeNode(node);
-        addNode(node);
+    public synchronized int dedupValues() {
+        return pool == null ? 0 : pool.distinct();
     }
 
     /**
-     * Add a new Node next to head.
+     * Number of entries that hold a deduplicated value, dedup ratio is this divided by <code>dedupValues</code>.
      *
-     * @param node Node to be moved
+     * @return references count, 0 if deduplication is disabled
      */
-    private void addNode(Node node) {
-        node.previous = head;
-        node.next = head.next;
-        head.next.previous = node;
-        head.next = node;
+    public synchronized int dedupRefs() {
+        return pool == null ? 0 : pool.references();
     }
 
     /**
-     * Remove last Node.
-     * Hash map needs to know which key to remove, hence pop node is required.
+     * Number of GET / READ operations that found key, for hit ratio.
      *
-     * @return pop node
+     * @return hits count
      */
-    private Node popEnd() {
-        Node old = end.previous;
-        removeNode(old);
-        return old;
+    public synchronized long hits() {
+        return hits;
     }
-}
 
-/**
- * Definition of Node.
- * Worked as double linked list.
- */
-class Node {
-    String key;
-    String val;
-    Node previous;
-    Node next;
+    /**
+     * Number of GET / READ operations that did not find key, for hit ratio.
+     *
+     * @return misses count
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public String policy() {
+        return policy.name();
+    }
+
+    /**
+     * Compress value if compression is enabled.
+     *
+     * @param value value to be stored
+     * @return packed value, or null if value should be stored as it is
+     */
+    private byte[] compress(String value) {
+        return codec == null ? null : codec.compress(value);
+    }
+
+    /**
+     * Store key-value pair. Caller must hold cache lock.
+     * If cache is oversize, it will remove Least Recently Used (LRU) Node store in cache.
+     *
+     * @param key       new key
+     * @param value     new value
+     * @param packedVal compressed value, or null if value is stored as it is
+     * @param flags     opaque client flags
+     * @return true if key was in cache and its value is overwritten
+     */
+    private boolean store(String key, String value, byte[] packedVal, int flags) {
+        if (pool != null) {
+
+            /* Take pooled copy before old value is released, so that rewriting same value keeps its copy */
+            if (packedVal != null) {
+                packedVal = pool.intern(new ValuePool.Blob(packedVal));
+            } else {
+                value = pool.intern(value);
+            }
+        }
+
+        Node node = cache.get(key);
+        boolean exist = node != null;
+
+        if (node == null) {
+            node = new Node();
+            node.key = key;
+            Node old = policy.admit(node, c >= capacity);
+            c++;
+            if (old != null) {
+                KvEvents.Eviction event = new KvEvents.Eviction();
+                if (event.isEnabled()) {
+                    event.keySize = old.key.length();
+                    event.policy = policy.name();
+                    event.commit();
+                }
+                cache.remove(old.key);
+                if (old.packed != null) {
+                    packed--;
+                }
+                release(old);
+                if (index != null) {
+                    index.remove(old.key);
+                }
+                if (listener != null) {
+                    listener.accept(old.key);
+                }
+                c--;
+            }
+            cache.put(node);
+            if (index != null) {
+                index.add(key);
+            }
+        } else {
+            if (node.packed != null) {
+                packed--;
+            }
+            release(node);
+            policy.access(node);
+        }
+        node.val = packedVal == null ? value : null;
+        node.packed = packedVal;
+        node.rope = null;
+        node.flags = flags;
+        node.cas = ++casCounter;
+        if (packedVal != null) {
+            packed++;
+        }
+        if (listener != null) {
+            listener.accept(key);
+        }
+        return exist;
+    }
+
+    /**
+     * Turn rope of node back into one string before whole value is read, so that a value that is read more often
+     * than it grows is copied once, not on every read. Caller must hold cache lock.
+     *
+     * @param node node in cache
+     */
+    private void flatten(Node node) {
+        if (node.rope != null) {
+            node.val = pool == null ? node.rope.toString() : pool.intern(node.rope.toString());
+            node.rope = null;
+        }
+    }
+
+    /**
+     * Release pooled value of node, if deduplication is enabled. Caller must hold cache lock.
+     *
+     * @param node node that lets go of its value
+     */
+    private void release(Node node) {
+        if (pool != null) {
+            pool.release(node.val);
+            pool.release(node.packed);
+        }
+    }
+
+    /**
+     * Unlink dump marker from its list.
+     *
+     * @param marker marker node
+     */
+    private static void unlink(Node marker) {
+        marker.previous.next = marker.next;
+        marker.next.previous = marker.previous;
+    }
+
+    /**
+     * Link dump marker right before given node, that is on the head side of it.
+     *
+     * @param marker marker node
+     * @param node   node in a list
+     */
+    private static void insertBefore(Node marker, Node node) {
+        marker.previous = node.previous;
+        marker.next = node;
+        node.previous.next = marker;
+        node.previous = marker;
+    }
 }
@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Store wrapper that fills misses of reads from a value loader (read-through), so that clients do not each go to the
+ * source of values when a key is missing.
+ * <p>
+ * Single flight: the first thread that misses a key calls loader and stores value with ADD (a concurrent client write
+ * wins), other threads that miss the same key meanwhile wait for that load instead of calling loader again; a waiter
+ * gives up after <code>timeoutMs</code> and answers miss. A loader that has no such key, or fails, is a miss, and
+ * nothing is cached for it. Misses of a multi-get are loaded by background threads at the same time, and the caller
+ * waits for all of them at once.
+ * <p>
+ * Stale while revalidate: when <code>refreshMs</code> is set, a key that was loaded longer ago than that is still
+ * served at once, and one background reload of it starts. Load time is only kept for keys that came from loader,
+ * together with CAS stamp of the loaded entry, and dropped when key is written, removed or evicted. Reload only
+ * starts from the entry of that stamp and replaces it with CAS, hence a client write, even one that lands right after
+ * a load, is never reloaded; a key that disappeared from source is removed.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 03:30
+ * Created with IntelliJ IDEA
+ */
+
+public class LoadingStore implements KeyValueStore {
+
+    private final KeyValueStore store;
+    private final ValueLoader loader;
+    private final long refreshNanos;        // 0 to disable stale-while-revalidate
+    private final long timeoutMs;
+    private final ExecutorService workers;      // reloads and multi-get loads
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Loaded> loadedAt = new ConcurrentHashMap<>();
+    private volatile Consumer<String> listener;
+
+    /**
+     * @param store     store that serves operations
+     * @param loader    source of missing values
+     * @param refreshMs age after which a loaded value is reloaded in background, 0 to never reload
+     * @param timeoutMs longest wait for a load that another thread runs
+     * @param threads   number of background load threads
+     */
+    public LoadingStore(KeyValueStore store, ValueLoader loader, long refreshMs, long timeoutMs, int threads) {
+        this.store = store;
+        this.loader = loader;
+        this.refreshNanos = Math.max(0, refreshMs) * 1000000;
+        this.timeoutMs = Math.max(1, timeoutMs);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+            Thread thread = new Thread(task, "loader-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        store.setListener(this::changed);
+    }
+
+    /**
+     * Called by store when a key is written, removed or evicted.
+     */
+    private void changed(String key) {
+        loadedAt.remove(key);
+        Consumer<String> next = listener;
+        if (next != null) {
+            next.accept(key);
+        }
+    }
+
+    /**
+     * Load a missing key, or wait for the load that another thread runs.
+     *
+     * @param key missing key
+     * @return value, or null if source does not have it, load failed or took too long
+     */
+    private String fetch(String key) {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return await(running, TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        }
+        return complete(key, mine);
+    }
+
+    /**
+     * Start loading a missing key in background, or join the load that another thread runs.
+     *
+     * @param key missing key
+     * @return load to wait for
+     */
+    private CompletableFuture<String> start(String key) {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return running;
+        }
+        workers.execute(() -> complete(key, mine));
+        return mine;
+    }
+
+    /**
+     * Wait for a load.
+     *
+     * @param load  load of a key
+     * @param nanos longest wait
+     * @return value, or null if source does not have it, load failed or took too long
+     */
+    private String await(CompletableFuture<?> load, long nanos) {
+        try {
+            return (String) load.get(nanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Call loader for a key that this thread has claimed in <code>inFlight</code>, store value and complete the load.
+     */
+    private String complete(String key, CompletableFuture<String> mine) {
+        String value = null;
+        try {
+            value = load(key);
+            if (value != null && store.add(key, value, 0) != StoreResult.STORED) {
+
+                /* A client wrote key meanwhile, its value is newer */
+                String current = store.get(key);
+                value = current == null ? value : current;
+            } else if (value != null) {
+                loaded(key, value);
+            }
+        } finally {
+            inFlight.remove(key, mine);
+            mine.complete(value);
+        }
+        return value;
+    }
+
+    /**
+     * Remember that a value written by loader is in store. Its CAS stamp is read back, and kept only if store still
+     * holds that value, so that a client write that lands after loader wrote is not taken for a loaded value. A client
+     * write that lands after the read drops this record, or leaves a stamp that reload no longer finds.
+     */
+    private void loaded(String key, String value) {
+        Node current = new Node();
+        if (store.read(key, current) && value.equals(current.value())) {
+            loadedAt.put(key, new Loaded(current.cas, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Start a background reload if key came from loader and is older than refresh age. At most one load of a key runs.
+     */
+    private void revalidate(String key) {
+        if (refreshNanos == 0) {
+            return;
+        }
+        Loaded loaded = loadedAt.get(key);
+        if (loaded == null || System.nanoTime() - loaded.time < refreshNanos) {
+            return;
+        }
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, mine) != null) {
+            return;
+        }
+        workers.execute(() -> {
+            String value = null;
+            try {
+                value = reload(key, loaded);
+            } finally {
+                inFlight.remove(key, mine);
+                mine.complete(value);
+            }
+        });
+    }
+
+    /**
+     * Reload a stale key, replace or remove it only if nobody wrote it since it was loaded.
+     *
+     * @param loaded stamp and time of loaded value
+     * @return value now in store, or null
+     */
+    private String reload(String key, Loaded loaded) {
+        Node stale = new Node();
+        if (!store.read(key, stale)) {
+            return null;
+        }
+        if (stale.cas != loaded.cas) {
+
+            /* A client wrote key after it was loaded */
+            loadedAt.remove(key, loaded);
+            return null;
+        }
+        String value;
+        try {
+            value = loader.load(key);
+        } catch (IOException | RuntimeException e) {
+
+            /* Keep serving stale value, try again on a later hit */
+            AccessLog.event(AccessLog.WARN, "reload failed", e);
+            loadedAt.replace(key, loaded, new Loaded(loaded.cas, System.nanoTime()));
+            return null;
+        }
+        AccessLog.request("reload", key, value == null ? Status.MISS : Status.HIT, value == null ? 0 : value.length());
+        if (value == null) {
+
+            /* Only if nobody wrote key since it was read, same as CAS below */
+            store.remove(key, stale.cas);
+            return null;
+        }
+        if (store.cas(key, value, stale.flags, stale.cas) != StoreResult.STORED) {
+            return null;
+        }
+        loaded(key, value);
+        return value;
+    }
+
+    /**
+     * Call loader, failure is logged and counts as miss.
+     */
+    private String load(String key) {
+        try {
+            String value = loader.load(key);
+            AccessLog.request("load", key, value == null ? Status.MISS : Status.HIT, value == null ? 0 : value.length());
+            return value;
+        } catch (IOException | RuntimeException e) {
+            AccessLog.event(AccessLog.WARN, "load failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * Copy a loaded value into holder, from store so that flags and CAS stamp are filled, or as it is if it has
+     * already been evicted again.
+     */
+    private boolean fill(String key, String value, Node holder) {
+        if (value == null) {
+            return false;
+        }
+        if (!store.read(key, holder)) {
+            holder.val = value;
+            holder.packed = null;
+            holder.rope = null;
+            holder.flags = 0;
+            holder.cas = 0;
+        }
+        return true;
+    }
+
+    public String get(String key) {
+        String val = store.get(key);
+        if (val == null) {
+            return fetch(key);
+        }
+        revalidate(key);
+        return val;
+    }
+
+    public boolean read(String key, Node holder) {
+        if (store.read(key, holder)) {
+            revalidate(key);
+            return true;
+        }
+        return fill(key, fetch(key), holder);
+    }
+
+    @Override
+    public void readAll(String[] keys, int n, Node[] holders, boolean[] found) {
+        store.readAll(keys, n, holders, found);
+        CompletableFuture<?>[] loads = null;
+        for (int i = 0; i < n; i++) {
+            if (found[i]) {
+                revalidate(keys[i]);
+            } else {
+                if (loads == null) {
+                    loads = new CompletableFuture<?>[n];
+                }
+                loads[i] = start(keys[i]);
+            }
+        }
+        if (loads == null) {
+            return;
+        }
+
+        /* All loads run meanwhile, so the longest wait is one timeout in total */
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (int i = 0; i < n; i++) {
+            if (loads[i] != null) {
+                found[i] = fill(keys[i], await(loads[i], deadline - System.nanoTime()), holders[i]);
+            }
+        }
+    }
+
+    public String getRange(String key, long offset, int length) {
+        String part = store.getRange(key, offset, length);
+        if (part != null) {
+            revalidate(key);
+            return part;
+        }
+        String value = fetch(key);
+        if (value == null) {
+            return null;
+        }
+        part = store.getRange(key, offset, length);
+        return part != null ? part : ValueRope.slice(value, offset, length);
+    }
+
+    public boolean put(String key, String value) {
+        return store.put(key, value);
+    }
+
+    public boolean put(String key, String value, int flags) {
+        return store.put(key, value, flags);
+    }
+
+    @Override
+    public void putAll(String[] keys, String[] values, int n) {
+        store.putAll(keys, values, n);
+    }
+
+    public StoreResult add(String key, String value, int flags) {
+        return store.add(key, value, flags);
+    }
+
+    public StoreResult replace(String key, String value, int flags) {
+        return store.replace(key, value, flags);
+    }
+
+    public StoreResult cas(String key, String value, int flags, long expected) {
+        return store.cas(key, value, flags, expected);
+    }
+
+    public Long incr(String key, long delta, boolean decrement) throws NumberFormatException {
+        return store.incr(key, delta, decrement);
+    }
+
+    public long append(String key, String value, boolean prepend) {
+        return store.append(key, value, prepend);
+    }
+
+    public boolean remove(String key) {
+        return store.remove(key);
+    }
+
+    public boolean remove(String key, long expected) {
+        return store.remove(key, expected);
+    }
+
+    public ScanPage scan(String prefix, String cursor, int count) {
+        return store.scan(prefix, cursor, count);
+    }
+
+    public ScanPage range(String from, boolean inclusive, String to, int count) {
+        return store.range(from, inclusive, to, count);
+    }
+
+    public DumpCursor dump() {
+        return store.dump();
+    }
+
+    public boolean isOrdered() {
+        return store.isOrdered();
+    }
+
+    /**
+     * Listener is chained after load time bookkeeping of this store.
+     *
+     * @param listener key change listener, or null
+     */
+    public void setListener(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    public String stats() {
+        return store.stats();
+    }
+
+    public int compressedCount() {
+        return store.compressedCount();
+    }
+
+    public int dedupValues() {
+        return store.dedupValues();
+    }
+
+    public int dedupRefs() {
+        return store.dedupRefs();
+    }
+
+    public long hits() {
+        return store.hits();
+    }
+
+    public long misses() {
+        return store.misses();
+    }
+
+    public String policy() {
+        return store.policy();
+    }
+
+    /**
+     * CAS stamp of an entry that loader wrote, and when it was loaded in nanoseconds.
+     */
+    private static final class Loaded {
+        final long cas;
+        final long time;
+
+        Loaded(long cas, long time) {
+            this.cas = cas;
+            this.time = time;
+        }
+    }
+}
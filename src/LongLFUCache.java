@@ -0,0 +1,359 @@
+import java.util.Random;
+
+/**
+ * Least Frequently Used (LFU) cache for primitive keys and values, same policy as LFUCache.java: when cache is full,
+ * the least frequently used key is evicted, and among keys of the same frequency the least recently used one.
+ * <p>
+ * Nothing is boxed and nothing is allocated after construction:
+ * Entries live in parallel arrays indexed by slot. Key index is an open-addressing hash table with linear probing,
+ * which stores slot + 1 (0 for empty), and deletion shifts later entries back instead of leaving tombstones.
+ * Entries of the same frequency form a doubly linked list through <code>before</code> / <code>after</code>.
+ * Frequency buckets form a doubly linked list in increasing frequency, so that least frequency is always the first
+ * bucket. At most <code>capacity</code> buckets are in use, unused buckets are kept in a free list.
+ * All operations are O(1). This cache is not thread safe.
+ * <p>
+ * Keys can be any long (int keys widen). Value -1 is returned for missing key, hence values should not be negative.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 22:50
+ * Created with IntelliJ IDEA
+ */
+
+public class LongLFUCache {
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private int size = 0;
+
+    /* Entries */
+    private final long[] keys;
+    private final long[] values;
+    private final int[] bucket;     // bucket of each entry
+    private final int[] before;     // previous entry in bucket, NONE if it is first
+    private final int[] after;      // next entry in bucket, NONE if it is last
+
+    /* Key index, open addressing */
+    private final int[] table;      // slot + 1, 0 for empty
+    private final int mask;
+
+    /* Frequency buckets */
+    private final long[] frequency;
+    private final int[] first;      // least recently used entry of bucket
+    private final int[] last;       // most recently used entry of bucket
+    private final int[] lower;      // bucket of lower frequency, NONE if it is least
+    private final int[] higher;     // bucket of higher frequency, NONE if it is most
+    private int least = NONE;       // bucket of least frequency
+    private int free;       // first unused bucket, unused buckets are linked by higher
+
+    /**
+     * @param capacity cache capacity
+     */
+    public LongLFUCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        keys = new long[this.capacity];
+        values = new long[this.capacity];
+        bucket = new int[this.capacity];
+        before = new int[this.capacity];
+        after = new int[this.capacity];
+
+        /* Keep load factor at most 0.5, so that probing stays short */
+        int tableSize = Integer.highestOneBit(Math.max(2, this.capacity * 2 - 1)) << 1;
+        table = new int[tableSize];
+        mask = tableSize - 1;
+
+        int buckets = this.capacity + 1;        // one more for bucket that is created before an empty one is freed
+        frequency = new long[buckets];
+        first = new int[buckets];
+        last = new int[buckets];
+        lower = new int[buckets];
+        higher = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            higher[b] = b + 1 < buckets ? b + 1 : NONE;
+        }
+        free = 0;
+    }
+
+    /**
+     * <code>get</code> operation. Return -1 if key is not found in cache.
+     *
+     * @param key requesting key
+     * @return corresponding value, or -1.
+     */
+    public long get(long key) {
+        int slot = find(key);
+        if (slot == NONE) {
+            return -1;
+        }
+        touch(slot);
+        return values[slot];
+    }
+
+    /**
+     * <code>put</code> operation, put new key-value pair into cache. Overwriting a key counts as one use of it.
+     * If cache is full, it will remove least frequently used key.
+     *
+     * @param key   new key
+     * @param value new value
+     */
+    public void put(long key, long value) {
+        if (capacity < 1) {
+            return;
+        }
+        int slot = find(key);
+        if (slot != NONE) {
+            values[slot] = value;
+            touch(slot);
+            return;
+        }
+        if (size == capacity) {
+            slot = first[least];
+            unlink(slot);
+            delete(keys[slot]);
+        } else {
+            slot = size++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        insert(key, slot);
+
+        /* New entry has frequency 1, which is always the least */
+        int b = least;
+        if (b == NONE || frequency[b] != 1) {
+            b = newBucket(1, NONE, least);
+        }
+        append(slot, b);
+    }
+
+    /**
+     * <code>remove</code> operation. Last entry moves into the freed slot, so that used slots stay dense.
+     *
+     * @param key key to be removed
+     * @return true if key was in cache
+     */
+    public boolean remove(long key) {
+        int slot = find(key);
+        if (slot == NONE) {
+            return false;
+        }
+        unlink(slot);
+        delete(key);
+        int tail = --size;
+        if (slot != tail) {
+            move(tail, slot);
+        }
+        return true;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Move entry to bucket of next frequency.
+     *
+     * @param slot entry slot
+     */
+    private void touch(int slot) {
+        int b = bucket[slot];
+        long f = frequency[b] + 1;
+        int next = higher[b];
+        if (next == NONE || frequency[next] != f) {
+            next = newBucket(f, b, next);
+        }
+        unlink(slot);
+        append(slot, next);
+    }
+
+    /**
+     * Take a bucket from free list and link it between given buckets.
+     */
+    private int newBucket(long f, int low, int high) {
+        int b = free;
+        free = higher[b];
+        frequency[b] = f;
+        first[b] = NONE;
+        last[b] = NONE;
+        lower[b] = low;
+        higher[b] = high;
+        if (low == NONE) {
+            least = b;
+        } else {
+            higher[low] = b;
+        }
+        if (high != NONE) {
+            lower[high] = b;
+        }
+        return b;
+    }
+
+    /**
+     * Add entry as most recently used of bucket.
+     */
+    private void append(int slot, int b) {
+        bucket[slot] = b;
+        before[slot] = last[b];
+        after[slot] = NONE;
+        if (last[b] == NONE) {
+            first[b] = slot;
+        } else {
+            after[last[b]] = slot;
+        }
+        last[b] = slot;
+    }
+
+    /**
+     * Remove entry from its bucket, and return bucket to free list if it becomes empty.
+     */
+    private void unlink(int slot) {
+        int b = bucket[slot];
+        if (before[slot] == NONE) {
+            first[b] = after[slot];
+        } else {
+            after[before[slot]] = after[slot];
+        }
+        if (after[slot] == NONE) {
+            last[b] = before[slot];
+        } else {
+            before[after[slot]] = before[slot];
+        }
+        if (first[b] != NONE) {
+            return;
+        }
+        if (lower[b] == NONE) {
+            least = higher[b];
+        } else {
+            higher[lower[b]] = higher[b];
+        }
+        if (higher[b] != NONE) {
+            lower[higher[b]] = lower[b];
+        }
+        higher[b] = free;
+        free = b;
+    }
+
+    /**
+     * Move entry to an unused slot, and relink its bucket neighbours and index entry.
+     */
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        values[to] = values[from];
+        int b = bucket[from];
+        bucket[to] = b;
+        before[to] = before[from];
+        after[to] = after[from];
+        if (before[to] == NONE) {
+            first[b] = to;
+        } else {
+            after[before[to]] = to;
+        }
+        if (after[to] == NONE) {
+            last[b] = to;
+        } else {
+            before[after[to]] = to;
+        }
+        int i = home(keys[to]);
+        while (table[i] != from + 1) {
+            i = (i + 1) & mask;
+        }
+        table[i] = to + 1;
+    }
+
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @return slot of key, or NONE
+     */
+    private int find(long key) {
+        for (int i = home(key); table[i] != 0; i = (i + 1) & mask) {
+            if (keys[table[i] - 1] == key) {
+                return table[i] - 1;
+            }
+        }
+        return NONE;
+    }
+
+    private void insert(long key, int slot) {
+        int i = home(key);
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    /**
+     * Remove key from index. Later entries of the same probe run are shifted back, so no tombstone is needed.
+     */
+    private void delete(long key) {
+        int i = home(key);
+        while (keys[table[i] - 1] != key) {
+            i = (i + 1) & mask;
+        }
+        int hole = i;
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int h = home(keys[table[j] - 1]);
+
+            /* Entry at j can move to hole if its home is not in (hole, j] */
+            if (((j - h) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    /**
+     * Compare with LFUCache on a skewed workload of random int keys: same hit ratio is expected, since both caches
+     * follow the same policy.
+     *
+     * @param args [capacity] [operations] [key space]
+     */
+    public static void main(String[] args) {
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+        int keySpace = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        /* Skewed keys: square of uniform random number favors small keys */
+        int[] trace = new int[operations];
+        Random random = new Random(42);
+        for (int i = 0; i < operations; i++) {
+            double u = random.nextDouble();
+            trace[i] = (int) (u * u * keySpace);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            LFUCache boxed = new LFUCache(capacity);
+            long start = System.nanoTime();
+            int boxedHits = 0;
+            for (int key : trace) {
+                if (boxed.get(key) >= 0) {
+                    boxedHits++;
+                } else {
+                    boxed.put(key, key);
+                }
+            }
+            long boxedNanos = System.nanoTime() - start;
+
+            LongLFUCache primitive = new LongLFUCache(capacity);
+            start = System.nanoTime();
+            int primitiveHits = 0;
+            for (int key : trace) {
+                if (primitive.get(key) >= 0) {
+                    primitiveHits++;
+                } else {
+                    primitive.put(key, key);
+                }
+            }
+            long primitiveNanos = System.nanoTime() - start;
+
+            System.out.println(String.format("LFUCache: %.1f ns/op, hit ratio %.4f. LongLFUCache: %.1f ns/op, hit ratio %.4f. ",
+                    (double) boxedNanos / operations, (double) boxedHits / operations,
+                    (double) primitiveNanos / operations, (double) primitiveHits / operations));
+        }
+    }
+}
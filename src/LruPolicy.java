@@ -0,0 +1,34 @@
+/**
+ * Least Recently Used, one list. Accessed node moves to head, node at end is evicted.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 23:10
+ * Created with IntelliJ IDEA
+ */
+
+class LruPolicy implements EvictionPolicy {
+    private final NodeList list = new NodeList();
+
+    public Node admit(Node node, boolean full) {
+        Node old = full ? list.pollLast() : null;
+        list.addFirst(node);
+        return old;
+    }
+
+    public void access(Node node) {
+        list.remove(node);
+        list.addFirst(node);
+    }
+
+    public void remove(Node node) {
+        list.remove(node);
+    }
+
+    public NodeList[] lists() {
+        return new NodeList[]{list};
+    }
+
+    public String name() {
+        return "lru";
+    }
+}
@@ -12,6 +12,10 @@ public class Message {
     private String op;
     private String key;
     private String val;
+    private long version;       // CAS stamp, SCAN / RANGE page size and entry count, client ID of SUBSCRIBE / TRACK, or GETRANGE offset and length
+    private boolean compressed;     // request: client accepts compressed value; response: value was sent compressed
+    private byte[] packed;      // compressed value to be sent as it is (see in ValueCodec.java)
+    private String keyspace;        // request: keyspace of key, null for default keyspace
     private final int keySize = 64;
     private final int valSzie = 1024;
 
@@ -27,11 +31,44 @@ public class Message {
         this.request = request;
         this.response = response;
         this.op = operation.toLowerCase();
-        if (!operation.equals("stats") && !operation.equals("set") && !operation.equals("get") && !operation.equals("exit")) {
+        if (!isSupported(this.op)) {
             throw new IllegalArgumentException("Incorrect operation! ");
         }
     }
 
+    /**
+     * Check if given operation is supported by binary protocol.
+     *
+     * @param operation operation in lower case
+     * @return true if supported
+     */
+    public static boolean isSupported(String operation) {
+        switch (operation) {
+            case "stats":
+            case "set":
+            case "get":
+            case "exit":
+            case "gets":
+            case "cas":
+            case "add":
+            case "replace":
+            case "incr":
+            case "decr":
+            case "scan":
+            case "range":
+            case "subscribe":
+            case "track":
+            case "invalidate":
+            case "dump":
+            case "append":
+            case "prepend":
+            case "getrange":
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * If this message is a request.
      *
@@ -68,6 +105,15 @@ public class Message {
         return val;
     }
 
+    /**
+     * Return CAS stamp in message.
+     *
+     * @return CAS stamp in message
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Return operation in message.
      *
@@ -115,6 +161,71 @@ public class Message {
         this.val = val;
     }
 
+    /**
+     * Set new CAS stamp.
+     *
+     * @param version new CAS stamp
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * If value is compressed in transfer.
+     * For request, it means client accepts compressed value in response.
+     *
+     * @return true if value is compressed in transfer
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Set boolean value to specify value is compressed in transfer.
+     *
+     * @param compressed if value is compressed in transfer
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Return compressed value that will be sent as it is, or null.
+     *
+     * @return compressed value
+     */
+    public byte[] getPacked() {
+        return packed;
+    }
+
+    /**
+     * Set compressed value, it replaces value when message is encoded.
+     *
+     * @param packed compressed value (see in ValueCodec.java)
+     */
+    public void setPacked(byte[] packed) {
+        this.packed = packed;
+        this.compressed = packed != null;
+    }
+
+    /**
+     * Return keyspace that request addresses, or null for default keyspace.
+     *
+     * @return keyspace name
+     */
+    public String getKeyspace() {
+        return keyspace;
+    }
+
+    /**
+     * Set keyspace that request addresses (see in Keyspaces.java).
+     *
+     * @param keyspace keyspace name, null or empty for default keyspace
+     */
+    public void setKeyspace(String keyspace) {
+        this.keyspace = keyspace;
+    }
+
     /**
      * Convert message to string.
      *
@@ -0,0 +1,202 @@
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Client library with an in-process near cache.
+ * Values read by <code>get</code> are kept in a small local LRU cache, and are served locally until server pushes an
+ * invalidation for the key. Server must run with <code>-Dkv.tracking=true</code>, otherwise every <code>get</code>
+ * goes to server.
+ * <p>
+ * One connection is kept open as invalidation channel (SUBSCRIBE), other requests use one connection each, same as
+ * Client.java. If invalidation channel is broken, near cache is bypassed since it can no longer be trusted.
+ * <p>
+ * A fetched value may be older than an invalidation that arrives while it is fetched, hence every invalidation bumps a
+ * counter of key (counters are striped by key hash), and a fetch only keeps its value if counter of key did not move
+ * from before request until after value is cached.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 18:30
+ * Created with IntelliJ IDEA
+ */
+
+public class NearCacheClient implements Closeable {
+
+    private static final int STRIPES = 1024;        // power of two
+
+    private final String server;
+    private final int port;
+    private final LRUCache near;
+    private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);        // by stripe of key
+    private final MessageCoder coder = new BinaryCoder();
+    private final Connection channel;
+    private final long id;
+    private volatile boolean coherent;
+
+    /**
+     * Connect to server and open invalidation channel.
+     *
+     * @param server   server address, or <code>unix:[path]</code> for Unix domain socket
+     * @param port     server port
+     * @param capacity max entries in near cache
+     * @throws IOException if server can not be reached
+     */
+    public NearCacheClient(String server, int port, int capacity) throws IOException {
+        this.server = server;
+        this.port = port;
+        this.near = new LRUCache(capacity);
+
+        channel = Connection.open(server, port);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(channel.getOutputStream()));
+        DataInputStream in = new DataInputStream(channel.getInputStream());
+        Message request = new Message(true, false, "subscribe");
+        request.setKey(" ");
+        request.setVal(" ");
+        write(out, request);
+        id = read(in).getVersion();
+        coherent = id != 0;
+
+        if (coherent) {
+            Thread listener = new Thread(() -> listen(in), "near-cache-invalidation");
+            listener.setDaemon(true);
+            listener.start();
+        } else {
+            channel.close();
+        }
+    }
+
+    /**
+     * Return value of given key, from near cache if possible.
+     *
+     * @param key requesting key
+     * @return value, or null if key does not exist
+     * @throws IOException if request failed
+     */
+    public String get(String key) throws IOException {
+        if (coherent) {
+            String val = near.get(key);
+            if (val != null) {
+                return val;
+            }
+        }
+
+        int stripe = stripe(key);
+        long before = invalidations.get(stripe);
+        String val = request("track", key, " ", id).getText();
+        if (val != null && coherent && invalidations.get(stripe) == before) {
+            near.put(key, val);
+
+            /* Invalidation may have come between check and put, it bumps counter before it removes key */
+            if (invalidations.get(stripe) != before) {
+                near.remove(key);
+            }
+        }
+        return val;
+    }
+
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Store key-value pair in server. Local copy is dropped, server will also push invalidation to other clients.
+     *
+     * @param key   key
+     * @param value value
+     * @throws IOException if request failed
+     */
+    public void set(String key, String value) throws IOException {
+        near.remove(key);
+        request("set", key, value, 0);
+        near.remove(key);
+    }
+
+    /**
+     * If near cache is in use.
+     *
+     * @return true if invalidation channel is open
+     */
+    public boolean isCoherent() {
+        return coherent;
+    }
+
+    /**
+     * Close invalidation channel, later reads always go to server.
+     *
+     * @throws IOException if channel can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        coherent = false;
+        channel.close();
+    }
+
+    /**
+     * Read INVALIDATE messages until channel is closed.
+     *
+     * @param in channel input stream
+     */
+    private void listen(DataInputStream in) {
+        try {
+            while (true) {
+                Message message = read(in);
+                if (!message.getOp().equals("invalidate")) {
+                    continue;
+                }
+                String key = message.getKey();
+                invalidations.incrementAndGet(stripe(key));
+                near.remove(key);
+            }
+        } catch (IOException e) {
+
+            /* Channel closed, values can not be trusted anymore */
+            coherent = false;
+        }
+    }
+
+    /**
+     * Send one request in a new connection and return response.
+     *
+     * @param op      operation
+     * @param key     key
+     * @param val     value
+     * @param version CAS stamp or client ID
+     * @return compact response from server
+     * @throws IOException if request failed
+     */
+    private Response request(String op, String key, String val, long version) throws IOException {
+        try (Connection s = Connection.open(server, port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            Message request = new Message(true, false, op);
+            request.setKey(key);
+            request.setVal(val);
+            request.setVersion(version);
+            request.setCompressed(true);
+            write(out, request);
+            int length = in.readInt();
+            byte[] data = new byte[length];
+            in.readFully(data, 0, length);
+            return Response.decode(data, op.equals("track"));
+        }
+    }
+
+    private void write(DataOutputStream out, Message request) throws IOException {
+        byte[] requestBytes = coder.toBinary(request);
+        out.writeByte((byte) -1);
+        out.writeInt(requestBytes.length);
+        out.write(requestBytes);
+        out.flush();
+    }
+
+    private Message read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte[] data = new byte[length];
+        in.readFully(data, 0, length);
+        Message response = coder.toMsg(data);
+        if (!response.isResponse()) {
+            throw new IOException("Error response! ");
+        }
+        return response;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Definition of Node.
+ * Worked as double linked list.
+ * <p>
+ * Node is also the holder that a caller passes to KeyValueStore.read to receive one consistent snapshot of an entry:
+ * key, value (as it is, compressed or as rope), flags and CAS stamp. List and index fields are only used by caches.
+ *
+ * @author BorisMirage
+ * Time: 2018/09/30 11:06
+ * Created with IntelliJ IDEA
+ */
+
+public class Node {
+    String key;
+    String val;     // null if value is compressed
+    byte[] packed;      // compressed value (see in ValueCodec.java), null if value is stored as it is
+    ValueRope rope;     // value grown by APPEND / PREPEND, val and packed are null while it is set
+    int flags;      // opaque client flags
+    long cas;       // unique stamp, changes on every write
+    boolean frequent;       // in frequent list of ARC policy
+    int hash;       // spread hash of key, set by NodeIndex
+    Node chain;     // next node in the same bucket of NodeIndex
+    Node previous;
+    Node next;
+
+    /**
+     * Return value of this node, decompress it if needed.
+     *
+     * @return value
+     */
+    String value() {
+        if (rope != null) {
+            return rope.toString();
+        }
+        return packed == null ? val : ValueCodec.decompress(packed);
+    }
+}
@@ -0,0 +1,221 @@
+import java.security.SecureRandom;
+
+/**
+ * Hash index from key to Node for LRUCache, that grows without stopping the world.
+ * <p>
+ * <code>java.util.HashMap</code> rehashes every entry at once when it grows, which stalls the request that triggers
+ * it for a long time once the cache holds millions of keys. This index keeps the old table while it grows: every
+ * later operation moves a few buckets from old table to new table, and lookups check both tables until old table is
+ * empty. Hence growth costs a small constant on each operation instead of one long pause.
+ * <p>
+ * Nodes are chained through <code>Node.chain</code> and remember their hash, so there is no entry object per key.
+ * Initial table is sized from cache capacity (up to a limit), so that a cache of normal size never grows at all.
+ * <p>
+ * Keys come from clients, and many strings share one <code>String.hashCode</code>, so a client could fill one chain
+ * and make every lookup of it linear. Hence keys are hashed with SipHash-1-3 over their chars, keyed by a random
+ * 128-bit secret of each index, which is not exposed and differs between processes and partitions.
+ * Index is not thread safe, LRUCache calls it while holding cache lock.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 23:40
+ * Created with IntelliJ IDEA
+ */
+
+class NodeIndex {
+    private static final int MAX_PRESIZE = 1 << 20;     // largest initial table, larger caches grow on demand
+    private static final int MIGRATE = 4;       // non-empty buckets moved on each operation
+    private static final int MAX_EMPTY_VISITS = 40;     // empty buckets skipped on each operation
+    private static final SecureRandom SECRETS = new SecureRandom();
+
+    private final long k0 = SECRETS.nextLong();     // SipHash key
+    private final long k1 = SECRETS.nextLong();
+
+    private Node[] table;
+    private Node[] old;     // table that is being migrated, null if not growing
+    private int migrated = 0;       // buckets of old table below this index are empty
+    private int size = 0;
+
+    /**
+     * @param expected expected number of keys
+     */
+    NodeIndex(int expected) {
+        long buckets = Math.min(MAX_PRESIZE, Math.max(16, (long) expected * 4 / 3 + 1));
+        table = new Node[Integer.highestOneBit((int) buckets - 1) << 1];
+    }
+
+    /**
+     * @param key requesting key
+     * @return node, or null if key is not in index
+     */
+    Node get(String key) {
+        migrate();
+        int h = hash(key);
+        if (old != null) {
+            int i = h & (old.length - 1);
+            if (i >= migrated) {
+                Node node = find(old[i], key, h);
+                if (node != null) {
+                    return node;
+                }
+            }
+        }
+        return find(table[h & (table.length - 1)], key, h);
+    }
+
+    boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Add node, its key must not be in index.
+     *
+     * @param node node with key
+     */
+    void put(Node node) {
+        migrate();
+        node.hash = hash(node.key);
+        int i = node.hash & (table.length - 1);
+        node.chain = table[i];
+        table[i] = node;
+        size++;
+        if (old == null && size > table.length - (table.length >>> 2)) {
+
+            /* Start growing, entries are moved by later operations */
+            old = table;
+            table = new Node[old.length * 2];
+            migrated = 0;
+        }
+    }
+
+    /**
+     * @param key key to be removed
+     * @return removed node, or null if key is not in index
+     */
+    Node remove(String key) {
+        migrate();
+        int h = hash(key);
+        Node node = null;
+        if (old != null) {
+            int i = h & (old.length - 1);
+            if (i >= migrated) {
+                node = unlink(old, i, key, h);
+            }
+        }
+        if (node == null) {
+            node = unlink(table, h & (table.length - 1), key, h);
+        }
+        if (node != null) {
+            size--;
+        }
+        return node;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Move a few buckets of old table to new table.
+     */
+    private void migrate() {
+        if (old == null) {
+            return;
+        }
+        int moved = 0;
+        int visits = 0;
+        while (migrated < old.length && moved < MIGRATE && visits < MAX_EMPTY_VISITS) {
+            Node node = old[migrated];
+            if (node == null) {
+                visits++;
+            } else {
+                old[migrated] = null;
+                while (node != null) {
+                    Node next = node.chain;
+                    int i = node.hash & (table.length - 1);
+                    node.chain = table[i];
+                    table[i] = node;
+                    node = next;
+                }
+                moved++;
+            }
+            migrated++;
+        }
+        if (migrated == old.length) {
+            old = null;
+        }
+    }
+
+    private static Node find(Node node, String key, int h) {
+        while (node != null && (node.hash != h || !node.key.equals(key))) {
+            node = node.chain;
+        }
+        return node;
+    }
+
+    private static Node unlink(Node[] tab, int i, String key, int h) {
+        Node previous = null;
+        Node node = tab[i];
+        while (node != null && (node.hash != h || !node.key.equals(key))) {
+            previous = node;
+            node = node.chain;
+        }
+        if (node == null) {
+            return null;
+        }
+        if (previous == null) {
+            tab[i] = node.chain;
+        } else {
+            previous.chain = node.chain;
+        }
+        node.chain = null;
+        return node;
+    }
+
+    /**
+     * SipHash-1-3 of key chars, 4 chars per word, last word holds remaining chars and byte length.
+     */
+    private int hash(String key) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        int n = key.length();
+        int words = n / 4 + 1;
+
+        /* One round for each word, then 3 finalization rounds */
+        for (int w = 0; w < words + 3; w++) {
+            long m = 0;
+            if (w < words) {
+                m = word(key, w * 4, n);
+                v3 ^= m;
+            } else if (w == words) {
+                v2 ^= 0xff;
+            }
+            v0 += v1;
+            v1 = Long.rotateLeft(v1, 13) ^ v0;
+            v0 = Long.rotateLeft(v0, 32);
+            v2 += v3;
+            v3 = Long.rotateLeft(v3, 16) ^ v2;
+            v0 += v3;
+            v3 = Long.rotateLeft(v3, 21) ^ v0;
+            v2 += v1;
+            v1 = Long.rotateLeft(v1, 17) ^ v2;
+            v2 = Long.rotateLeft(v2, 32);
+            v0 ^= m;
+        }
+        long h = v0 ^ v1 ^ v2 ^ v3;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long word(String key, int i, int n) {
+        if (i + 4 <= n) {
+            return key.charAt(i) | (long) key.charAt(i + 1) << 16 | (long) key.charAt(i + 2) << 32
+                    | (long) key.charAt(i + 3) << 48;
+        }
+        long m = (long) n << 57;        // byte length modulo 256 in top byte
+        for (int shift = 0; i < n; i++, shift += 16) {
+            m |= (long) key.charAt(i) << shift;
+        }
+        return m;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Doubly linked list of nodes with head and end sentinels. Head side is most recently used.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 23:10
+ * Created with IntelliJ IDEA
+ */
+
+class NodeList {
+    final Node head = new Node();
+    final Node end = new Node();
+    int size = 0;       // nodes with key, markers are not counted
+
+    NodeList() {
+        head.next = end;
+        end.previous = head;
+    }
+
+    /**
+     * Add node next to head.
+     *
+     * @param node node to be added
+     */
+    void addFirst(Node node) {
+        node.previous = head;
+        node.next = head.next;
+        head.next.previous = node;
+        head.next = node;
+        if (node.key != null) {
+            size++;
+        }
+    }
+
+    /**
+     * Remove given node from this list.
+     *
+     * @param node node in this list
+     */
+    void remove(Node node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        if (node.key != null) {
+            size--;
+        }
+    }
+
+    /**
+     * Remove and return least recently used node, markers are skipped.
+     *
+     * @return node, or null if list has no node with key
+     */
+    Node pollLast() {
+        Node old = end.previous;
+        while (old != head && old.key == null) {
+            old = old.previous;
+        }
+        if (old == head) {
+            return null;
+        }
+        remove(old);
+        return old;
+    }
+}
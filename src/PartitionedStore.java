@@ -0,0 +1,437 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Shared-nothing store that splits keyspace into partitions by key hash.
+ * Each partition has its own LRUCache and is owned by one worker thread, which is the only thread that ever touches
+ * it, hence cache lock is never contended and no cache line is shared between partitions.
+ * Connection threads hand operations to owning worker through a lock-free queue, and park until worker completes it.
+ * Multi-key reads are grouped by partition, one hand-off for each partition, and partitions work on them in parallel.
+ * Worker spins shortly when queue is empty before it parks.
+ * <p>
+ * Java can not pin a thread to a core, so each worker is a dedicated thread that can be pinned by OS tools.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 19:50
+ * Created with IntelliJ IDEA
+ */
+
+public class PartitionedStore implements KeyValueStore {
+
+    private static final int SPIN = 1000;       // empty polls before worker parks
+
+    private final Partition[] partitions;
+
+    /**
+     * @param n        number of partitions, usually number of cores
+     * @param capacity total capacity, split evenly across partitions
+     * @param codec    value codec, or null to disable compression
+     * @param ordered  true to maintain ordered key index in each partition
+     * @param policy   eviction policy of each partition, lru or arc
+     */
+    public PartitionedStore(int n, int capacity, ValueCodec codec, boolean ordered, String policy) {
+        this(n, capacity, codec, ordered, policy, false);
+    }
+
+    /**
+     * Store whose partitions deduplicate values. Each partition keeps its own pool, so a value shared by keys of
+     * different partitions is kept once in each of them.
+     *
+     * @param n        number of partitions, usually number of cores
+     * @param capacity total capacity, split evenly across partitions
+     * @param codec    value codec, or null to disable compression
+     * @param ordered  true to maintain ordered key index in each partition
+     * @param policy   eviction policy of each partition, lru or arc
+     * @param dedup    true to deduplicate values
+     */
+    public PartitionedStore(int n, int capacity, ValueCodec codec, boolean ordered, String policy, boolean dedup) {
+        partitions = new Partition[n];
+        for (int i = 0; i < n; i++) {
+            partitions[i] = new Partition(new LRUCache(Math.max(1, capacity / n), codec, ordered, policy, dedup), "partition-" + i);
+        }
+    }
+
+    public String get(String key) {
+        return owner(key).call(cache -> cache.get(key));
+    }
+
+    public boolean read(String key, Node holder) {
+        return owner(key).call(cache -> cache.read(key, holder));
+    }
+
+    /**
+     * Group keys by partition, hand each group to its owner at once, then wait for all of them.
+     */
+    @Override
+    public void readAll(String[] keys, int n, Node[] holders, boolean[] found) {
+        Task<?>[] tasks = new Task<?>[partitions.length];
+        for (int p = 0; p < partitions.length; p++) {
+            final int owner = p;
+            boolean any = false;
+            for (int i = 0; i < n && !any; i++) {
+                any = index(keys[i]) == owner;
+            }
+            if (!any) {
+                continue;
+            }
+            tasks[p] = partitions[p].submit(cache -> {
+                for (int i = 0; i < n; i++) {
+                    if (index(keys[i]) == owner) {
+                        found[i] = cache.read(keys[i], holders[i]);
+                    }
+                }
+                return null;
+            });
+        }
+        for (Task<?> task : tasks) {
+            if (task != null) {
+                task.await();
+            }
+        }
+    }
+
+    public boolean put(String key, String value) {
+        return owner(key).call(cache -> cache.put(key, value));
+    }
+
+    public boolean put(String key, String value, int flags) {
+        return owner(key).call(cache -> cache.put(key, value, flags));
+    }
+
+    /**
+     * Group pairs by partition and hand each group to its owner at once, same as <code>readAll</code>.
+     */
+    @Override
+    public void putAll(String[] keys, String[] values, int n) {
+        Task<?>[] tasks = new Task<?>[partitions.length];
+        for (int p = 0; p < partitions.length; p++) {
+            final int owner = p;
+            int size = 0;
+            for (int i = 0; i < n; i++) {
+                if (index(keys[i]) == owner) {
+                    size++;
+                }
+            }
+            if (size == 0) {
+                continue;
+            }
+            String[] ownKeys = new String[size];
+            String[] ownValues = new String[size];
+            for (int i = 0, j = 0; i < n; i++) {
+                if (index(keys[i]) == owner) {
+                    ownKeys[j] = keys[i];
+                    ownValues[j++] = values[i];
+                }
+            }
+            tasks[p] = partitions[p].submit(cache -> {
+                cache.putAll(ownKeys, ownValues, ownKeys.length);
+                return null;
+            });
+        }
+        for (Task<?> task : tasks) {
+            if (task != null) {
+                task.await();
+            }
+        }
+    }
+
+    public StoreResult add(String key, String value, int flags) {
+        return owner(key).call(cache -> cache.add(key, value, flags));
+    }
+
+    public StoreResult replace(String key, String value, int flags) {
+        return owner(key).call(cache -> cache.replace(key, value, flags));
+    }
+
+    public StoreResult cas(String key, String value, int flags, long expected) {
+        return owner(key).call(cache -> cache.cas(key, value, flags, expected));
+    }
+
+    public Long incr(String key, long delta, boolean decrement) throws NumberFormatException {
+        return owner(key).call(cache -> cache.incr(key, delta, decrement));
+    }
+
+    public long append(String key, String value, boolean prepend) {
+        return owner(key).call(cache -> cache.append(key, value, prepend));
+    }
+
+    public String getRange(String key, long offset, int length) {
+        return owner(key).call(cache -> cache.getRange(key, offset, length));
+    }
+
+    public boolean remove(String key) {
+        return owner(key).call(cache -> cache.remove(key));
+    }
+
+    public boolean remove(String key, long expected) {
+        return owner(key).call(cache -> cache.remove(key, expected));
+    }
+
+    public ScanPage scan(String prefix, String cursor, int count) {
+        if (cursor == null) {
+            return range(prefix, true, ScanPage.prefixEnd(prefix), count);
+        }
+        return range(cursor, false, ScanPage.prefixEnd(prefix), count);
+    }
+
+    /**
+     * Ask every partition for its first <code>count</code> keys in range, and merge them in key order.
+     */
+    public ScanPage range(String from, boolean inclusive, String to, int count) {
+        Task<?>[] tasks = new Task<?>[partitions.length];
+        for (int p = 0; p < partitions.length; p++) {
+            tasks[p] = partitions[p].submit(cache -> cache.range(from, inclusive, to, count));
+        }
+        ScanPage[] pages = new ScanPage[partitions.length];
+        boolean more = false;
+        for (int p = 0; p < partitions.length; p++) {
+            pages[p] = (ScanPage) tasks[p].await();
+            more |= pages[p].cursor != null;
+        }
+
+        /* K-way merge, partitions never share a key */
+        ScanPage merged = new ScanPage(count);
+        int[] next = new int[partitions.length];
+        while (true) {
+            int smallest = -1;
+            for (int p = 0; p < pages.length; p++) {
+                if (next[p] < pages[p].size && (smallest < 0
+                        || pages[p].keys[next[p]].compareTo(pages[smallest].keys[next[smallest]]) < 0)) {
+                    smallest = p;
+                }
+            }
+            if (smallest < 0) {
+                break;
+            }
+            if (merged.isFull()) {
+                more = true;
+                break;
+            }
+            int i = next[smallest]++;
+            merged.add(pages[smallest].keys[i], pages[smallest].values[i], pages[smallest].flags[i]);
+        }
+        if (more && merged.size > 0) {
+            merged.cursor = merged.keys[merged.size - 1];
+        }
+        return merged;
+    }
+
+    /**
+     * Walk partitions one after another, each page is read by owner of the partition.
+     */
+    public DumpCursor dump() {
+        return new DumpCursor() {
+            private int p = 0;
+            private DumpCursor current = null;
+
+            public ScanPage next(int count) {
+                while (p < partitions.length) {
+                    Partition partition = partitions[p];
+                    if (current == null) {
+                        current = partition.call(LRUCache::dump);
+                    }
+                    DumpCursor cursor = current;
+                    ScanPage page = partition.call(cache -> cursor.next(count));
+                    if (page.cursor == null) {
+                        current = null;
+                        p++;
+                    }
+                    if (page.size > 0) {
+                        if (page.cursor == null && p < partitions.length) {
+                            page.cursor = page.keys[page.size - 1];
+                        }
+                        return page;
+                    }
+                }
+                return new ScanPage(0);
+            }
+
+            public void close() {
+                if (current != null) {
+                    DumpCursor cursor = current;
+                    partitions[p].call(cache -> {
+                        cursor.close();
+                        return null;
+                    });
+                    current = null;
+                }
+                p = partitions.length;
+            }
+        };
+    }
+
+    public boolean isOrdered() {
+        return partitions[0].call(LRUCache::isOrdered);
+    }
+
+    public void setListener(Consumer<String> listener) {
+        for (Partition partition : partitions) {
+            partition.call(cache -> {
+                cache.setListener(listener);
+                return null;
+            });
+        }
+    }
+
+    public String stats() {
+        long size = 0;
+        for (Partition partition : partitions) {
+            size += Long.parseLong(partition.call(LRUCache::stats));
+        }
+        return String.valueOf(size);
+    }
+
+    public int compressedCount() {
+        int count = 0;
+        for (Partition partition : partitions) {
+            count += partition.call(LRUCache::compressedCount);
+        }
+        return count;
+    }
+
+    public int dedupValues() {
+        int count = 0;
+        for (Partition partition : partitions) {
+            count += partition.call(LRUCache::dedupValues);
+        }
+        return count;
+    }
+
+    public int dedupRefs() {
+        int count = 0;
+        for (Partition partition : partitions) {
+            count += partition.call(LRUCache::dedupRefs);
+        }
+        return count;
+    }
+
+    public long hits() {
+        long count = 0;
+        for (Partition partition : partitions) {
+            count += partition.call(LRUCache::hits);
+        }
+        return count;
+    }
+
+    public long misses() {
+        long count = 0;
+        for (Partition partition : partitions) {
+            count += partition.call(LRUCache::misses);
+        }
+        return count;
+    }
+
+    public String policy() {
+        return partitions[0].call(LRUCache::policy);
+    }
+
+    private Partition owner(String key) {
+        return partitions[index(key)];
+    }
+
+    private int index(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % partitions.length;
+    }
+
+    /**
+     * One operation handed to a partition worker. Caller parks until worker marks it done.
+     */
+    private static final class Task<T> {
+        final Function<LRUCache, T> op;
+        final Thread caller = Thread.currentThread();
+        T result;
+        Throwable error;        // RuntimeException or Error, op throws nothing else
+        volatile boolean done = false;
+
+        Task(Function<LRUCache, T> op) {
+            this.op = op;
+        }
+
+        /**
+         * Run operation, any failure is handed to caller, so that worker stays alive and caller never parks forever.
+         */
+        void run(LRUCache cache) {
+            try {
+                result = op.apply(cache);
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                done = true;
+                LockSupport.unpark(caller);
+            }
+        }
+
+        T await() {
+            while (!done) {
+                LockSupport.park(this);
+            }
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            if (error != null) {
+                throw (RuntimeException) error;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Partition with its own cache, queue and worker thread.
+     */
+    private static final class Partition implements Runnable {
+        final LRUCache cache;
+        final ConcurrentLinkedQueue<Task<?>> queue = new ConcurrentLinkedQueue<>();
+        final Thread worker;
+        volatile boolean parked = false;
+
+        Partition(LRUCache cache, String name) {
+            this.cache = cache;
+            this.worker = new Thread(this, name);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        <T> Task<T> submit(Function<LRUCache, T> op) {
+            Task<T> task = new Task<>(op);
+            if (Thread.currentThread() == worker) {
+                task.run(cache);
+                return task;
+            }
+            queue.offer(task);
+
+            /* Worker publishes parked before it checks queue again, so wake-up can not be lost */
+            if (parked) {
+                LockSupport.unpark(worker);
+            }
+            return task;
+        }
+
+        <T> T call(Function<LRUCache, T> op) {
+            return submit(op).await();
+        }
+
+        public void run() {
+            int idle = 0;
+            while (true) {
+                Task<?> task = queue.poll();
+                if (task != null) {
+                    idle = 0;
+                    task.run(cache);
+                } else if (++idle < SPIN) {
+                    Thread.onSpinWait();
+                } else {
+                    parked = true;
+                    if (queue.isEmpty()) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    idle = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact response of binary protocol.
+ * Format: [status (1 byte)] [CAS stamp (8 bytes, only GETS / TRACK hit)] [raw value bytes].
+ * Nothing of request is echoed. Highest bit of status marks that value bytes are compressed (see in ValueCodec.java).
+ * Over TCP, response is prefixed by its length in 4 bytes, same as other messages.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 21:20
+ * Created with IntelliJ IDEA
+ */
+
+public class Response {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Status status;
+    private final long cas;
+    private final byte[] value;
+    private final boolean compressed;
+
+    /**
+     * @param status     status code
+     * @param cas        CAS stamp
+     * @param value      raw value bytes
+     * @param compressed if value bytes are compressed
+     */
+    public Response(Status status, long cas, byte[] value, boolean compressed) {
+        this.status = status;
+        this.cas = cas;
+        this.value = value;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Write a response with its length directly to stream, without building an intermediate array.
+     *
+     * @param out        output stream
+     * @param status     status code
+     * @param withCas    if CAS stamp is written
+     * @param cas        CAS stamp
+     * @param value      raw value bytes, or null
+     * @param compressed if value bytes are compressed
+     * @throws IOException if write failed
+     */
+    public static void write(DataOutputStream out, Status status, boolean withCas, long cas, byte[] value,
+                             boolean compressed) throws IOException {
+        int length = value == null ? 0 : value.length;
+        out.writeInt(1 + (withCas ? 8 : 0) + length);
+        out.writeByte(compressed ? status.code | Status.COMPRESSED : status.code);
+        if (withCas) {
+            out.writeLong(cas);
+        }
+        if (length > 0) {
+            out.write(value);
+        }
+    }
+
+    /**
+     * Write response without length prefix to buffer, used for datagram.
+     *
+     * @param buffer     output buffer
+     * @param status     status code
+     * @param withCas    if CAS stamp is written
+     * @param cas        CAS stamp
+     * @param value      raw value bytes, or null
+     * @param compressed if value bytes are compressed
+     */
+    public static void write(ByteBuffer buffer, Status status, boolean withCas, long cas, byte[] value,
+                             boolean compressed) {
+        buffer.put(compressed ? (byte) (status.code | Status.COMPRESSED) : status.code);
+        if (withCas) {
+            buffer.putLong(cas);
+        }
+        if (value != null) {
+            buffer.put(value);
+        }
+    }
+
+    /**
+     * Decode response.
+     *
+     * @param data    response bytes without length prefix
+     * @param withCas if response to GETS / TRACK, whose hit carries CAS stamp
+     * @return response
+     * @throws IOException if response is malformed
+     */
+    public static Response decode(byte[] data, boolean withCas) throws IOException {
+        if (data.length < 1) {
+            throw new IOException("Empty response! ");
+        }
+        Status status;
+        try {
+            status = Status.of(data[0]);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        boolean compressed = (data[0] & Status.COMPRESSED) != 0;
+        int offset = 1;
+        long cas = 0;
+        if (withCas && status == Status.HIT) {
+            if (data.length < 9) {
+                throw new IOException("Response is too short! ");
+            }
+            cas = ByteBuffer.wrap(data, 1, 8).getLong();
+            offset = 9;
+        }
+        byte[] value = EMPTY;
+        if (data.length > offset) {
+            value = new byte[data.length - offset];
+            System.arraycopy(data, offset, value, 0, value.length);
+        }
+        if (compressed) {
+            value = ValueCodec.unpack(value);
+        }
+        return new Response(status, cas, value, compressed);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getCas() {
+        return cas;
+    }
+
+    /**
+     * @return value bytes, decompressed
+     */
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * @return value as text, or null if response carries no value
+     */
+    public String getText() {
+        if (status != Status.HIT && status != Status.OK) {
+            return null;
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if value was transferred compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * One bounded page of SCAN / RANGE result.
+ * Entries are in key order. Cursor is the last key in this page if more keys may follow, or null if scan is done.
+ * Next page starts right after cursor.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 17:40
+ * Created with IntelliJ IDEA
+ */
+
+public class ScanPage {
+    String[] keys;
+    String[] values;
+    int[] flags;
+    int size = 0;
+    String cursor = null;
+
+    /**
+     * @param capacity max entries in this page
+     */
+    ScanPage(int capacity) {
+        keys = new String[capacity];
+        values = new String[capacity];
+        flags = new int[capacity];
+    }
+
+    /**
+     * Append an entry to page.
+     *
+     * @param key   key
+     * @param value value
+     * @param flag  opaque client flags
+     */
+    void add(String key, String value, int flag) {
+        keys[size] = key;
+        values[size] = value;
+        flags[size] = flag;
+        size++;
+    }
+
+    boolean isFull() {
+        return size == keys.length;
+    }
+
+    /**
+     * Return the smallest string that is greater than every string starting with given prefix.
+     *
+     * @param prefix key prefix
+     * @return exclusive upper bound of prefix, or null if there is no such bound
+     */
+    static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char ch = prefix.charAt(i);
+            if (ch != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (ch + 1);
+            }
+        }
+        return null;
+    }
+}
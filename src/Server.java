@@ -1,9 +1,14 @@
 import java.io.*;
 import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.InetAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
 import java.net.UnknownHostException;
-import java.util.Arrays;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * @author BorisMirage
@@ -13,33 +18,62 @@ import java.util.Arrays;
 
 class BinaryServerThread implements Runnable {
 
-    private Socket sock;
-    private LRUCache store;
-    private int protocol = 0;       // Default TCP
+    static final int TCP = 0;
+    static final int UNIX = 1;      // Unix domain socket
+
+    private Connection sock;
+    private Keyspaces keyspaces;
+    private KeyValueStore store;        // store of keyspace that current request addresses
+    private InvalidationTracker tracker;        // null if client tracking is disabled
+    private HotKeyTracker hotKeys;      // null if hot key tracking is disabled
+    private ConnectionReaper reaper;
+    private ConnectionReaper.Watch watch;       // deadline of current phase of this connection
+    private int protocol = TCP;       // Default TCP
+    private static final int MAX_REQUEST = 2 * 1024 * 1024;     // largest binary request accepted
+    private static final int MAX_PAGE = 1000;       // largest SCAN / RANGE page
+    private static final int HOT_KEYS = 10;     // number of hot keys in STATS
+    private final KvEvents.ConnectionAccepted accepted = new KvEvents.ConnectionAccepted();
 
-    public BinaryServerThread(Socket s, LRUCache cache, int protocol) {
+    /**
+     * Created by accepting thread right after <code>accept</code>, so that thread start time is recorded.
+     */
+    public BinaryServerThread(Connection s, Keyspaces keyspaces, InvalidationTracker tracker, HotKeyTracker hotKeys,
+                              ConnectionReaper reaper, int protocol) {
+        accepted.begin();
         this.sock = s;
-        store = cache;
+        this.keyspaces = keyspaces;
+        store = keyspaces.defaultStore();
+        this.tracker = tracker;
+        this.hotKeys = hotKeys;
+        this.reaper = reaper;
+        this.watch = reaper.watch(s);
         this.protocol = protocol;
     }
 
     /**
      * Server running thread.
      * Client message format:
-     * [mode] [length] [key 1] [value 1] ... [key n] [value n]
+     * [mode] [length (4 bytes)] [key 1] [value 1] ... [key n] [value n]
      */
     public void run() {
+        accepted.end();
+        if (accepted.shouldCommit()) {
+            accepted.peer = sock.getPeer();
+            accepted.unix = protocol == UNIX;
+            accepted.commit();
+        }
 
         try {
             DataInputStream in = new DataInputStream(sock.getInputStream());
-            System.out.println("Got connection from " + sock.getInetAddress());
+            AccessLog.event(AccessLog.INFO, protocol == UNIX ? "connection (Unix domain socket)" : "connection", sock.getPeer());
+            watch.expect(ConnectionReaper.IDLE);
             byte id = in.readByte();
             int intID = (int) id;
 
             if (intID == -1) {
                 binary(in);
             } else {
-                ascii(in);
+                ascii(in, id & 0xff);
             }
 
             // clean things up
@@ -47,7 +81,9 @@ class BinaryServerThread implements Runnable {
             sock.close();
 
         } catch (IOException e) {
-            e.printStackTrace();
+            AccessLog.event(AccessLog.WARN, "connection error", e);
+        } finally {
+            watch.expect(ConnectionReaper.NONE);
         }
     }
 
@@ -59,197 +95,524 @@ class BinaryServerThread implements Runnable {
     private void binary(DataInputStream in) {
 
         try {
-            DataOutputStream out = new DataOutputStream(sock.getOutputStream());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream()));
 
             /* Read and store incoming key-value pair */
-            int length = (int) in.readByte();
-            System.out.println(length);
+            KvEvents.RequestDecoded decoded = new KvEvents.RequestDecoded();
+            decoded.begin();
+            watch.expect(ConnectionReaper.READ);
+            int length = in.readInt();
+            if (length < 0 || length > MAX_REQUEST) {
+                throw new IOException("Wrong request length! ");
+            }
             BinaryCoder receiveDecoder = new BinaryCoder();
             Message receiveMessage;
             byte[] data = new byte[length];
             in.readFully(data, 0, length);
-            receiveMessage = receiveDecoder.toMsg(data);
+            receiveMessage = receiveDecoder.toRequest(data);
+            decoded.end();
+            if (decoded.shouldCommit()) {
+                decoded.op = receiveMessage.getOp();
+                decoded.size = length;
+                decoded.commit();
+            }
             BinaryCoder outEncoder = new BinaryCoder();
-
-            if (receiveMessage.getOp().equals("stats")) {
-                stats(out, outEncoder);
-            } else if (receiveMessage.getOp().equals("get")) {
-                get(receiveMessage.getKey(), out, outEncoder);
+            store = keyspaces.get(receiveMessage.getKeyspace());
+            watch.expect(ConnectionReaper.WRITE);
+
+            if (store == null) {
+                AccessLog.event(AccessLog.WARN, "unknown keyspace", receiveMessage.getKeyspace());
+                respond(Status.ERROR, out);
+            } else if (receiveMessage.getOp().equals("stats")) {
+                stats(receiveMessage.getKeyspace(), out);
+            } else if (receiveMessage.getOp().equals("get") || receiveMessage.getOp().equals("gets")) {
+                get(receiveMessage.getOp(), receiveMessage.getKey(), receiveMessage.isCompressed(), out);
             } else if (receiveMessage.getOp().equals("set")) {
-                set(receiveMessage.getKey(), receiveMessage.getVal(), out, outEncoder);
+                set(receiveMessage.getKey(), receiveMessage.getVal(), out);
+            } else if (receiveMessage.getOp().equals("track")) {
+                track(receiveMessage, out);
+            } else if (receiveMessage.getOp().equals("subscribe")) {
+                subscribe(in, out, outEncoder);
+            } else if (receiveMessage.getOp().equals("cas") || receiveMessage.getOp().equals("add")
+                    || receiveMessage.getOp().equals("replace")) {
+                conditionalSet(receiveMessage, out);
+            } else if (receiveMessage.getOp().equals("append") || receiveMessage.getOp().equals("prepend")) {
+                append(receiveMessage, out);
+            } else if (receiveMessage.getOp().equals("getrange")) {
+                getRange(receiveMessage, out);
+            } else if (receiveMessage.getOp().equals("incr") || receiveMessage.getOp().equals("decr")) {
+                incr(receiveMessage, out);
+            } else if (receiveMessage.getOp().equals("scan") || receiveMessage.getOp().equals("range")) {
+                scan(receiveMessage, out, outEncoder);
+            } else if (receiveMessage.getOp().equals("dump")) {
+                dump(receiveMessage, out, outEncoder);
             } else if (receiveMessage.getOp().equals("exit")) {
-                System.out.println("Exit operation received, system offline. ");
-                exit(out, outEncoder);
+                AccessLog.event(AccessLog.INFO, "exit, system offline", sock.getPeer());
+                respond(Status.OK, out);
                 System.exit(0);
-
+            } else {
+                respond(Status.ERROR, out);
             }
             out.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            AccessLog.event(AccessLog.WARN, "connection error", e);
         }
     }
 
     /**
-     * Deal with the message that based on ASCII protocol (telnet).
+     * Deal with the message that based on ASCII protocol (memcached text protocol, see in AsciiProtocol.java).
      *
-     * @param in input data stream
+     * @param in    input data stream
+     * @param first first byte of stream, which has been read to identify protocol
      */
-    private void ascii(DataInputStream in) {
+    private void ascii(DataInputStream in, int first) {
         try {
+            AsciiProtocol protocol = new AsciiProtocol(in, sock.getOutputStream(), keyspaces, hotKeys, reaper, watch);
+            protocol.serve(first);
+        } catch (IOException e) {
+            AccessLog.event(AccessLog.WARN, "connection error", e);
+        }
+    }
 
-            /* ASCII support */
-            BufferedReader data = new BufferedReader(new InputStreamReader(in));
-            in.readByte();
-            PrintWriter outPrintWriter = new PrintWriter(sock.getOutputStream(), true);
-            String key;
-            String val;
-
-            /* Read operation */
-            String input = data.readLine();
-            String[] arr = input.split(" ");
-            System.out.println(Arrays.toString(arr));
-            if (arr[0].equals("set")) {
-                for (int i = 1; i < arr.length; i += 2) {
-                    try {
-                        key = arr[i];
-                        val = arr[i + 1];
-                        store.put(key, val);
-                        outPrintWriter.println(String.format("Server: Put [%s] - [%s] into server! ", key, val));
-                    } catch (IndexOutOfBoundsException e) {
-                        outPrintWriter.println("Input arguments error! ");
-                        System.out.println("Input arguments error! ");
-                    }
-                }
-            }
-            if (arr[0].equals("get")) {
-                for (int i = 1; i < arr.length; i++) {
-                    key = arr[i];
-                    if (store.get(key) != null) {
-                        outPrintWriter.println(String.format("Server: GET [%s] - [%s] ", key, store.get(key)));
-                    } else {
-                        outPrintWriter.println(String.format("Server: [%s] is not found in server! ", key));
-                    }
-                }
-            }
-            if (arr[0].equals("stats")) {
-                outPrintWriter.println("Server: " + store.stats());
-                outPrintWriter.flush();
-            }
+    /**
+     * Return STATS of requested keyspace to client, status is OK and value is stats text.
+     * If server has more than one keyspace, a summary of every keyspace follows.
+     *
+     * @param keyspace requested keyspace, null for default keyspace
+     * @param out      output DataOutputStream
+     */
+    private void stats(String keyspace, DataOutputStream out) {
+        long hits = store.hits();
+        long reads = hits + store.misses();
+        int values = store.dedupValues();
+        String stats = String.format("STATS: %s. Keyspace: %s, policy: %s, hits: %d, misses: %d, hit ratio: %.4f",
+                store.stats(), keyspace == null || keyspace.isEmpty() ? Keyspaces.DEFAULT : keyspace, store.policy(),
+                hits, reads - hits, reads == 0 ? 0.0 : (double) hits / reads)
+                + (values == 0 ? "" : String.format(". Dedup: %d entries share %d values, ratio: %.2f",
+                store.dedupRefs(), values, (double) store.dedupRefs() / values))
+                + (keyspaces.names().size() > 1 ? ". Keyspaces: " + keyspaces.report() : "")
+                + ". Connections closed by " + reaper.report()
+                + ". Access log: " + AccessLog.settings()
+                + (hotKeys == null ? "" : ". " + hotKeys.report(HOT_KEYS));
+        AccessLog.request("stats", keyspace, Status.OK, stats.length());
+        respond(Status.OK, false, 0, stats.getBytes(StandardCharsets.UTF_8), false, out);
+    }
 
-            data.close();
-            outPrintWriter.flush();
-            outPrintWriter.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * GET, GETS and TRACK. Response status is HIT followed by raw value bytes, or MISS if key does not exist.
+     * GETS and TRACK also put CAS stamp before value, so that client can issue CAS later.
+     * If client accepts compressed value and value is stored compressed, it is sent without decompression.
+     *
+     * @param op               get, gets or track
+     * @param k                key that client requested
+     * @param acceptCompressed if client accepts compressed value
+     * @param out              output DataOutputStream
+     */
+    private void get(String op, String k, boolean acceptCompressed, DataOutputStream out) {
+        /* Read value and CAS stamp together */
+        Node node = new Node();
+        KvEvents.StoreOperation event = new KvEvents.StoreOperation();
+        event.begin();
+        boolean found = store.read(k, node);
+        event.end();
+        if (event.shouldCommit()) {
+            event.op = op;
+            event.hit = found;
+            event.keySize = k.length();
+            event.valueSize = !found ? 0 : node.packed != null ? node.packed.length : node.val.length();
+            event.commit();
+        }
+        if (!found) {
+            record(k, 0);
+            AccessLog.request(op, k, Status.MISS, 0);
+            respond(Status.MISS, out);
+            return;
+        }
+        byte[] value;
+        boolean compressed = false;
+        if (node.packed != null && acceptCompressed) {
+            value = node.packed;
+            compressed = true;
+        } else if (node.packed != null) {
+            try {
+                value = ValueCodec.unpack(node.packed);
+            } catch (IOException e) {
+                AccessLog.event(AccessLog.WARN, "packed value error", e);
+                respond(Status.ERROR, out);
+                return;
+            }
+        } else {
+            value = node.val.getBytes(StandardCharsets.UTF_8);
         }
+        record(k, compressed ? ValueCodec.rawLength(value) : value.length);
+        AccessLog.request(op, k, Status.HIT, value.length);
+        respond(Status.HIT, !op.equals("get"), node.cas, value, compressed, out);
+    }
 
+    /**
+     * TRACK, same as GETS, but also record that the client has read this key, so that it will be notified when key
+     * changes. Key is tracked before it is read, hence any later write is always notified.
+     *
+     * @param request request from client, its CAS stamp field carries client ID
+     * @param out     output DataOutputStream
+     */
+    private void track(Message request, DataOutputStream out) {
+        if (tracker != null) {
+            tracker.track(request.getVersion(), request.getKey());
+        }
+        get("track", request.getKey(), request.isCompressed(), out);
     }
 
     /**
-     * Return STATS to server.
+     * SUBSCRIBE, register this connection as invalidation channel and reply client ID (0 if tracking is disabled).
+     * Connection is kept open and INVALIDATE messages are pushed to it, until client closes it.
      *
-     * @param out socket output PrintWriter
+     * @param in         input DataInputStream
+     * @param out        output DataOutputStream
+     * @param outEncoder encoder
      */
-    private void stats(DataOutputStream out, BinaryCoder outEncoder) {
-        System.out.println("STATS: " + store.stats());
+    private void subscribe(DataInputStream in, DataOutputStream out, BinaryCoder outEncoder) {
+        Message response = new Message(false, true, "subscribe");
+        response.setKey(" ");
+        response.setVal(" ");
+        if (tracker == null) {
+            send(response, out, outEncoder);
+            return;
+        }
+        long id;
+        synchronized (out) {
+            id = tracker.subscribe(out, sock);
+            response.setVersion(id);
+            send(response, out, outEncoder);
+        }
+        AccessLog.event(AccessLog.INFO, "subscribe", id);
 
-        Message statsResponse = new Message(false, true, "stats");
-        statsResponse.setVal("STATS: " + store.stats());
-        statsResponse.setKey(" ");
+        /* Channel stays open as long as client wants, invalidations are pushed by other threads */
+        watch.expect(ConnectionReaper.NONE);
         try {
-            byte[] responseBytes = outEncoder.toBinary(statsResponse);
-            out.writeInt(responseBytes.length);
-            out.write(responseBytes);
-            out.flush();
+            while (in.read() != -1) {
+
+                /* Wait until client closes the channel */
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+
+            /* Connection broken, same as closed */
+        } finally {
+            tracker.unsubscribe(id);
         }
     }
 
     /**
-     * Return value according to given key.
+     * Store key-value pair according to given key-value pair.
+     * If the given key has been in server, server will rewrite this represented value.
+     * Response status is STORED, or TOO_LARGE if store can never hold the entry. Nothing of request is echoed.
      *
-     * @param k   key that client requested
-     * @param out socket output DataOutputStream
+     * @param k   key
+     * @param v   value
+     * @param out output DataOutputStream
      */
-    private void get(String k, DataOutputStream out, BinaryCoder outEncoder) {
-        System.out.println(String.format("Request GET [%s] ", k));
-        String m;
-        String v;
-        Message getResponse = new Message(false, true, "get");
-        if (store.get(k) != null) {
-
-            /* If key found in server */
-            v = store.get(k);
-            m = String.format("Request Key-Value pair [%s] - [%s]", k, v);
-            System.out.println(String.format("Request Key-Value pair [%s] - [%s]", k, v));
+    private void set(String k, String v, DataOutputStream out) {
+        record(k, 0);
+        KvEvents.StoreOperation event = new KvEvents.StoreOperation();
+        event.begin();
+        try {
+            store.put(k, v);
+        } catch (IllegalArgumentException e) {
+            AccessLog.request("set", k, Status.TOO_LARGE, v.length());
+            respond(Status.TOO_LARGE, out);
+            return;
+        }
+        event.end();
+        commit(event, "set", true, k, v);
+        AccessLog.request("set", k, Status.STORED, v.length());
+        respond(Status.STORED, out);
+    }
 
+    /**
+     * CAS, ADD and REPLACE. Condition is checked and value is stored in one atomic operation of cache.
+     * Response status is STORED, NOT_STORED, EXISTS or NOT_FOUND.
+     *
+     * @param request request from client
+     * @param out     output DataOutputStream
+     */
+    private void conditionalSet(Message request, DataOutputStream out) {
+        String k = request.getKey();
+        String v = request.getVal();
+        StoreResult result;
+        KvEvents.StoreOperation event = new KvEvents.StoreOperation();
+        event.begin();
+        if (request.getOp().equals("cas")) {
+            result = store.cas(k, v, 0, request.getVersion());
+        } else if (request.getOp().equals("add")) {
+            result = store.add(k, v, 0);
         } else {
+            result = store.replace(k, v, 0);
+        }
+        event.end();
+        commit(event, request.getOp(), result == StoreResult.STORED, k, v);
+        AccessLog.request(request.getOp(), k, Status.of(result), v.length());
+        respond(Status.of(result), out);
+    }
+
+    /**
+     * APPEND and PREPEND. Value of request contains characters to be added, only they are sent over the wire.
+     * Response status is STORED, NOT_STORED if key does not exist, or TOO_LARGE if grown value would be longer than
+     * KeyValueStore.MAX_VALUE_LENGTH.
+     *
+     * @param request request from client
+     * @param out     output DataOutputStream
+     */
+    private void append(Message request, DataOutputStream out) {
+        String k = request.getKey();
+        String v = request.getVal();
+        record(k, 0);
+        KvEvents.StoreOperation event = new KvEvents.StoreOperation();
+        event.begin();
+        long length = store.append(k, v, request.getOp().equals("prepend"));
+        event.end();
+        commit(event, request.getOp(), length >= 0, k, v);
+        Status status = length >= 0 ? Status.STORED
+                : length == KeyValueStore.TOO_LARGE ? Status.TOO_LARGE : Status.NOT_STORED;
+        AccessLog.request(request.getOp(), k, status, v.length());
+        respond(status, out);
+    }
 
-            /* If key was not found in server */
-            m = String.format("Key [%s] does not exist in server! ", k);
-            System.out.println(String.format("Key [%s] does not exist in server! ", k));
+    /**
+     * GETRANGE. CAS stamp field of request carries offset and length (see in BinaryCoder.java).
+     * Response status is HIT followed by raw bytes of requested part (empty if offset is beyond end), or MISS if key
+     * does not exist.
+     *
+     * @param request request from client
+     * @param out     output DataOutputStream
+     */
+    private void getRange(Message request, DataOutputStream out) {
+        String k = request.getKey();
+        long offset = request.getVersion() >>> 32;
+        int length = (int) Math.min(Integer.MAX_VALUE, request.getVersion() & 0xffffffffL);
+        KvEvents.StoreOperation event = new KvEvents.StoreOperation();
+        event.begin();
+        String part = store.getRange(k, offset, length);
+        event.end();
+        commit(event, "getrange", part != null, k, part);
+        if (part == null) {
+            record(k, 0);
+            AccessLog.request("getrange", k, Status.MISS, 0);
+            respond(Status.MISS, out);
+            return;
         }
-        getResponse.setKey(" ");
-        getResponse.setVal(m);
+        byte[] value = part.getBytes(StandardCharsets.UTF_8);
+        record(k, value.length);
+        AccessLog.request("getrange", k, Status.HIT, value.length);
+        respond(Status.HIT, false, 0, value, false, out);
+    }
 
+    /**
+     * INCR and DECR. Value of request contains the delta.
+     * Response status is HIT followed by new number in decimal, NOT_FOUND if key does not exist, or ERROR if value or
+     * delta is not a number.
+     *
+     * @param request request from client
+     * @param out     output DataOutputStream
+     */
+    private void incr(Message request, DataOutputStream out) {
+        Long result;
         try {
-            byte[] responseBytes = outEncoder.toBinary(getResponse);
-            out.writeInt(responseBytes.length);
-            out.write(responseBytes);
-            out.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+            long delta = Long.parseUnsignedLong(request.getVal().trim());
+            KvEvents.StoreOperation event = new KvEvents.StoreOperation();
+            event.begin();
+            result = store.incr(request.getKey(), delta, request.getOp().equals("decr"));
+            event.end();
+            commit(event, request.getOp(), result != null, request.getKey(), null);
+        } catch (NumberFormatException e) {
+            AccessLog.request(request.getOp(), request.getKey(), Status.ERROR, 0);
+            respond(Status.ERROR, out);
+            return;
+        }
+        if (result == null) {
+            AccessLog.request(request.getOp(), request.getKey(), Status.NOT_FOUND, 0);
+            respond(Status.NOT_FOUND, out);
+        } else {
+            AccessLog.request(request.getOp(), request.getKey(), Status.HIT, 0);
+            respond(Status.HIT, false, 0, Long.toUnsignedString(result).getBytes(StandardCharsets.US_ASCII), false, out);
         }
     }
 
     /**
-     * Store key-value pair according to given key-value pair.
-     * If the given key has been in server, server will rewrite this represented value.
+     * SCAN and RANGE. Send one bounded page of entries in key order.
+     * A header message goes first, its value is next cursor (empty if scan is done) and its count tells how many
+     * entry messages follow. If store keeps no ordered index, a compact NOT_SUPPORTED response is sent instead.
+     *
+     * @param request    request from client
+     * @param out        output DataOutputStream
+     * @param outEncoder encoder
+     */
+    private void scan(Message request, DataOutputStream out, BinaryCoder outEncoder) {
+        if (!store.isOrdered()) {
+            AccessLog.request(request.getOp(), request.getKey(), Status.NOT_SUPPORTED, 0);
+            respond(Status.NOT_SUPPORTED, out);
+            return;
+        }
+        int count = (int) Math.max(1, Math.min(request.getVersion(), MAX_PAGE));
+        Message header = new Message(false, true, request.getOp());
+        header.setKey(" ");
+        ScanPage page;
+        if (request.getOp().equals("scan")) {
+            String cursor = request.getVal().isEmpty() ? null : request.getVal();
+            page = store.scan(request.getKey(), cursor, count);
+        } else {
+            String to = request.getVal().isEmpty() ? null : request.getVal();
+            page = store.range(request.getKey(), true, to, count);
+        }
+        AccessLog.request(request.getOp(), request.getKey(), Status.OK, page.size);
+        header.setVal(page.cursor == null ? "" : page.cursor);
+        header.setVersion(page.size);
+        send(header, out, outEncoder);
+        for (int i = 0; i < page.size; i++) {
+            Message entry = new Message(false, true, request.getOp());
+            entry.setKey(page.keys[i]);
+            entry.setVal(page.values[i]);
+            send(entry, out, outEncoder);
+        }
+    }
+
+    /**
+     * DUMP. Walk the whole store with a dump cursor and stream every page, framed same as SCAN, until cursor is done.
+     * Cache lock is only held while reading each page, so normal traffic goes on between pages.
      *
-     * @param k          ArrayList that temporary store key-value pair send from client
-     * @param v          socket output PrintWriter
+     * @param request    request from client, its CAS stamp field carries page size
      * @param out        output DataOutputStream
      * @param outEncoder encoder
      */
-    private void set(String k, String v, DataOutputStream out, BinaryCoder outEncoder) {
-        String m;
-        Message setResponse = new Message(false, true, "set");
-        if (store.get(k) != null) {
+    private void dump(Message request, DataOutputStream out, BinaryCoder outEncoder) {
+        int count = (int) Math.max(1, Math.min(request.getVersion(), MAX_PAGE));
+        long total = 0;
+        try (DumpCursor cursor = store.dump()) {
+            ScanPage page;
+            do {
+
+                /* Deadline covers one page, so a long dump is only closed if client stops reading */
+                watch.expect(ConnectionReaper.WRITE);
+                page = cursor.next(count);
+                Message header = new Message(false, true, "dump");
+                header.setKey(" ");
+                header.setVal(page.cursor == null ? "" : " ");
+                header.setVersion(page.size);
+                write(header, out, outEncoder);
+                for (int i = 0; i < page.size; i++) {
+                    Message entry = new Message(false, true, "dump");
+                    entry.setKey(page.keys[i]);
+                    entry.setVal(page.values[i]);
+                    write(entry, out, outEncoder);
+                }
+                total += page.size;
+            } while (page.cursor != null);
+            out.flush();
+        } catch (IOException e) {
 
-            /* If duplicate key was found in hash map */
-            m = String.format("Duplicate key [%s] found in server. Rewrite to [%s]", k, v);
-            System.out.println(String.format("Duplicate key [%s] found in server. Rewrite to [%s]", k, v));
+            /* Client went away, cursor is closed */
+            AccessLog.event(AccessLog.WARN, "dump aborted", e);
+            return;
+        }
+        AccessLog.request("dump", null, Status.OK, total);
+    }
 
-        } else {
-            m = String.format("Request SET [%s] [%s]. ", k, v);
-            System.out.println(String.format("Request SET [%s] [%s]. ", k, v));
+    /**
+     * Feed hot key tracker.
+     *
+     * @param k         key
+     * @param byteCount uncompressed bytes of value that served to client
+     */
+    private void record(String k, int byteCount) {
+        if (hotKeys != null) {
+            hotKeys.record(k, byteCount);
         }
-        store.put(k, v);
-        setResponse.setKey(" ");
-        setResponse.setVal(m);
+    }
+
+    /**
+     * Write a compact response that carries status only.
+     *
+     * @param status status code
+     * @param out    output DataOutputStream
+     */
+    private void respond(Status status, DataOutputStream out) {
+        respond(status, false, 0, null, false, out);
+    }
+
+    /**
+     * Write a compact response (see in Response.java) with its length to client.
+     *
+     * @param status     status code
+     * @param withCas    if CAS stamp goes before value
+     * @param cas        CAS stamp
+     * @param value      raw value bytes, or null
+     * @param compressed if value bytes are compressed
+     * @param out        output DataOutputStream
+     */
+    private void respond(Status status, boolean withCas, long cas, byte[] value, boolean compressed, DataOutputStream out) {
+        KvEvents.ResponseFlushed event = new KvEvents.ResponseFlushed();
+        event.begin();
         try {
-            byte[] responseBytes = outEncoder.toBinary(setResponse);
-            out.writeInt(responseBytes.length);
-            out.write(responseBytes);
+            Response.write(out, status, withCas, cas, value, compressed);
             out.flush();
         } catch (IOException e) {
-            e.printStackTrace();
+            AccessLog.event(AccessLog.WARN, "response write error", e);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.status = status.name();
+            event.size = 5 + (withCas ? 8 : 0) + (value == null ? 0 : value.length);
+            event.commit();
+        }
+    }
 
+    /**
+     * Commit store operation event if it is enabled and over its threshold.
+     *
+     * @param event event that has ended
+     * @param op    operation
+     * @param hit   if key was found or value was stored
+     * @param k     key
+     * @param v     value, or null
+     */
+    private static void commit(KvEvents.StoreOperation event, String op, boolean hit, String k, String v) {
+        if (event.shouldCommit()) {
+            event.op = op;
+            event.hit = hit;
+            event.keySize = k.length();
+            event.valueSize = v == null ? 0 : v.length();
+            event.commit();
         }
     }
 
-    private void exit(DataOutputStream out, BinaryCoder outEncoder) {
-        Message statsResponse = new Message(false, true, "exit");
-        statsResponse.setVal("Exit operation received, system offline. ");
-        statsResponse.setKey(" ");
+    /**
+     * Encode response and write it with its length without flushing, caller flushes after a batch.
+     *
+     * @param response   response message
+     * @param out        output DataOutputStream
+     * @param outEncoder encoder
+     * @throws IOException if write failed
+     */
+    private void write(Message response, DataOutputStream out, BinaryCoder outEncoder) throws IOException {
+        byte[] responseBytes = outEncoder.toBinary(response);
+        out.writeInt(responseBytes.length);
+        out.write(responseBytes);
+    }
+
+    /**
+     * Encode response and write it with its length to client.
+     *
+     * @param response   response message
+     * @param out        output DataOutputStream
+     * @param outEncoder encoder
+     */
+    private void send(Message response, DataOutputStream out, BinaryCoder outEncoder) {
         try {
-            byte[] responseBytes = outEncoder.toBinary(statsResponse);
+            byte[] responseBytes = outEncoder.toBinary(response);
             out.writeInt(responseBytes.length);
             out.write(responseBytes);
             out.flush();
         } catch (IOException e) {
-            e.printStackTrace();
+            AccessLog.event(AccessLog.WARN, "response write error", e);
         }
     }
 }
@@ -260,8 +623,107 @@ class BinaryServerThread implements Runnable {
 public class Server {
 
     public Server() {
-        int cacheCapacity = 1000;
-        LRUCache cache = new LRUCache(cacheCapacity);
+        int cacheCapacity = Integer.getInteger("kv.capacity", 1000);
+        int compressThreshold = Integer.getInteger("kv.compress.threshold", 0);     // 0 to disable compression
+        boolean ordered = Boolean.getBoolean("kv.index.ordered");        // keep ordered key index for SCAN / RANGE
+        int partitions = Integer.getInteger("kv.partitions", 0);        // 0 for one cache shared by all threads
+        String policy = System.getProperty("kv.policy", "lru");        // eviction policy, lru or arc
+        int arenaMB = Integer.getInteger("kv.arena.mb", 64);        // byte budget of compact stores
+        boolean dedup = Boolean.getBoolean("kv.dedup");       // keep one copy of each distinct value
+        ValueCodec codec = compressThreshold > 0 ? new ValueCodec(compressThreshold) : null;
+        KeyValueStore cache = null;
+        try {
+            if (System.getProperty("kv.store", "").equals("compact")) {
+
+                /* Entries in primitive arrays and one byte arena, LRU only, no ordered index and no partitions */
+                int arenaBytes = (int) Math.min(Integer.MAX_VALUE - 8, arenaMB * 1024L * 1024L);
+                cache = new CompactLRUCache(cacheCapacity, arenaBytes, codec);
+            } else if (partitions > 0) {
+                cache = new PartitionedStore(partitions, cacheCapacity, codec, ordered, policy, dedup);
+            } else {
+                cache = new LRUCache(cacheCapacity, codec, ordered, policy, dedup);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Could not create store: " + e.getMessage());
+            System.exit(-1);
+        }
+        try {
+
+            /* Request threads only fill ring buffer slots, log is written by a background thread */
+            AccessLog.start(Integer.getInteger("kv.log.buffer", 65536), System.getProperty("kv.log.file"),
+                    System.getProperty("kv.log.level", "info"), Integer.getInteger("kv.log.sample", 1));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not start access log: " + e.getMessage());
+            System.exit(-1);
+        }
+        InvalidationTracker tracker = null;
+
+        /* Close connections that wait too long for a request, or take too long to send one or to read a response */
+        ConnectionReaper reaper = new ConnectionReaper(Long.getLong("kv.timeout.idle", 60000),
+                Long.getLong("kv.timeout.read", 10000), Long.getLong("kv.timeout.write", 10000));
+        HotKeyTracker hotKeys = null;
+        int hotKeySample = Integer.getInteger("kv.hotkeys.sample", 0);     // record 1 of N requests, 0 to disable
+        if (hotKeySample > 0) {
+
+            /* 6 slots of 10 seconds, report covers last minute */
+            hotKeys = new HotKeyTracker(64, 6, 10000, hotKeySample);
+        }
+        if (Boolean.getBoolean("kv.tracking")) {
+
+            /* Push invalidations to clients that keep a near cache */
+            tracker = new InvalidationTracker(Integer.getInteger("kv.tracking.keys", 1000000),
+                    Integer.getInteger("kv.tracking.queue", 4096));
+        }
+        String loadFile = System.getProperty("kv.load.file");      // pre-warm store from file before listening
+        if (loadFile != null) {
+            int format = "binary".equalsIgnoreCase(System.getProperty("kv.load.format")) ? BulkLoader.BINARY : BulkLoader.CSV;
+            int threads = Integer.getInteger("kv.load.threads", Runtime.getRuntime().availableProcessors());
+            try {
+                new BulkLoader(cache, format, threads).load(loadFile);
+            } catch (IOException e) {
+                System.err.println("Could not load " + loadFile + ": " + e.getMessage());
+                System.exit(-1);
+            }
+        }
+        String loaderFile = System.getProperty("kv.loader.file");      // fill misses of default keyspace from file
+        if (loaderFile != null) {
+            try {
+                ValueLoader loader = new FileLoader(loaderFile, Long.getLong("kv.loader.latency", 0));
+                cache = new LoadingStore(cache, loader, Long.getLong("kv.loader.refresh", 0),
+                        Long.getLong("kv.loader.timeout", 5000), Integer.getInteger("kv.loader.threads", 2));
+            } catch (IOException e) {
+                System.err.println("Could not read loader file " + loaderFile + ": " + e.getMessage());
+                System.exit(-1);
+            }
+        }
+        String traceFile = System.getProperty("kv.trace.file");        // record sampled key accesses for TraceSimulator
+        if (traceFile != null) {
+            try {
+                TracingStore tracing = new TracingStore(cache, traceFile, Integer.getInteger("kv.trace.sample", 1),
+                        Integer.getInteger("kv.trace.buffer", 65536));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        tracing.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }));
+                cache = tracing;
+            } catch (IOException e) {
+                System.err.println("Could not create trace file " + traceFile + ": " + e.getMessage());
+                System.exit(-1);
+            }
+        }
+        Keyspaces keyspaces = null;
+        try {
+
+            /* Named keyspaces besides default one, see in Keyspaces.java */
+            keyspaces = Keyspaces.configure(cache, System.getProperty("kv.keyspaces"), codec, ordered, dedup, arenaMB);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Could not create keyspaces: " + e.getMessage());
+            System.exit(-1);
+        }
+        keyspaces.setListener(tracker);
 //        HashMap<String, String> store = new HashMap<>();        // Same map that sharing to both ASCII and binary client
         ServerSocket binarySocket = null;
 
@@ -282,6 +744,24 @@ public class Server {
         }
 
 
+        int udpPort = Integer.getInteger("kv.udp.port", 0);       // 0 to disable UDP listener
+        String udpAddress = System.getProperty("kv.udp.address", "127.0.0.1");        // see UdpServer.java before widening
+        if (udpPort > 0) {
+            try {
+                UdpServer udp = new UdpServer(udpAddress, udpPort, keyspaces, hotKeys);
+                udp.start(Integer.getInteger("kv.udp.threads", 2));
+                System.out.println("Waiting for UDP requests on " + udpAddress + ":" + udpPort + "...");
+            } catch (IOException e) {
+                System.err.println("Could not listen on UDP " + udpAddress + ":" + udpPort + ".");
+                System.exit(-1);
+            }
+        }
+
+        String unixPath = System.getProperty("kv.unix.path");      // listen on Unix domain socket if set
+        if (unixPath != null) {
+            listenUnix(unixPath, keyspaces, tracker, hotKeys, reaper);
+        }
+
         try {
             binarySocket = new ServerSocket(5555);
         } catch (IOException e) {
@@ -294,14 +774,12 @@ public class Server {
             try {
 
                 // wait for a connection
-                BinaryServerThread binary = new BinaryServerThread(binarySocket.accept(), cache, 0);
+                BinaryServerThread binary = new BinaryServerThread(new Connection(binarySocket.accept()), keyspaces, tracker, hotKeys, reaper, BinaryServerThread.TCP);
 
                 // start a new thread to handle the connection
                 Thread binaryThread = new Thread(binary);
                 binaryThread.start();
 
-                System.out.println("Listening start. ");
-
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -316,6 +794,45 @@ public class Server {
 
     }
 
+    /**
+     * Accept connections from Unix domain socket in a background thread. Connections speak the same binary and ASCII
+     * protocols as TCP connections, and share the same keyspaces.
+     *
+     * @param path      socket file path, existing file is replaced
+     * @param keyspaces keyspaces shared by all connections
+     * @param tracker   invalidation tracker, or null
+     * @param hotKeys   hot key tracker, or null
+     * @param reaper    connection reaper
+     */
+    private static void listenUnix(String path, Keyspaces keyspaces, InvalidationTracker tracker, HotKeyTracker hotKeys,
+                                   ConnectionReaper reaper) {
+        ServerSocketChannel unixSocket;
+        try {
+            Files.deleteIfExists(Path.of(path));
+            unixSocket = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            unixSocket.bind(UnixDomainSocketAddress.of(path));
+        } catch (IOException e) {
+            System.err.println("Could not listen on Unix domain socket: " + path + ".");
+            System.exit(-1);
+            return;
+        }
+
+        Thread acceptor = new Thread(() -> {
+            while (unixSocket.isOpen()) {
+                try {
+                    SocketChannel channel = unixSocket.accept();
+                    BinaryServerThread binary = new BinaryServerThread(new Connection(channel, path), keyspaces, tracker, hotKeys, reaper, BinaryServerThread.UNIX);
+                    new Thread(binary).start();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "unix-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("Waiting for connections on " + path + "...");
+    }
+
     /**
      * Main function to start server.
      *
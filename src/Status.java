@@ -0,0 +1,67 @@
+/**
+ * One-byte status code at the beginning of compact binary response (see in Response.java).
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 21:20
+ * Created with IntelliJ IDEA
+ */
+
+public enum Status {
+    OK(0),      // operation done, STATS text may follow
+    HIT(1),     // key found, value follows
+    MISS(2),        // key not found
+    STORED(3),      // value stored
+    NOT_STORED(4),      // condition of ADD / REPLACE not met
+    EXISTS(5),      // CAS stamp does not match
+    NOT_FOUND(6),       // key not found for CAS / INCR / DECR
+    ERROR(7),       // request can not be served
+    TOO_LARGE(8),       // response does not fit in one UDP datagram (retry over TCP), or value is too large for store
+    NOT_SUPPORTED(9);       // operation is not available in this store, e.g. SCAN without ordered index
+
+    /**
+     * Status bit that marks value is compressed (see in ValueCodec.java).
+     */
+    static final int COMPRESSED = 0x80;
+
+    private static final Status[] BY_CODE = values();
+
+    final byte code;
+
+    Status(int code) {
+        this.code = (byte) code;
+    }
+
+    /**
+     * Convert status byte to status, compression bit is ignored.
+     *
+     * @param code status byte
+     * @return status
+     * @throws IllegalArgumentException if code is not defined
+     */
+    static Status of(byte code) {
+        int c = code & ~COMPRESSED & 0xff;
+        if (c >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown status code! ");
+        }
+        return BY_CODE[c];
+    }
+
+    /**
+     * Convert result of conditional store operation to status.
+     *
+     * @param result store result
+     * @return status
+     */
+    static Status of(StoreResult result) {
+        switch (result) {
+            case STORED:
+                return STORED;
+            case NOT_STORED:
+                return NOT_STORED;
+            case EXISTS:
+                return EXISTS;
+            default:
+                return NOT_FOUND;
+        }
+    }
+}
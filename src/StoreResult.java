@@ -0,0 +1,14 @@
+/**
+ * Result of conditional store operations in cache.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 16:40
+ * Created with IntelliJ IDEA
+ */
+
+public enum StoreResult {
+    STORED,     // value stored
+    NOT_STORED,     // condition of add / replace not met
+    EXISTS,     // value has been modified since given CAS stamp
+    NOT_FOUND       // key not in cache
+}
@@ -52,21 +52,17 @@ public class TestClient {
             MessageCoder encode = new BinaryCoder();
             byte[] requestBytes = encode.toBinary(request);
             out.writeByte((byte) -1);
-            out.writeByte((byte) requestBytes.length);
+            out.writeInt(requestBytes.length);
             out.write(requestBytes);
             out.flush();
 
-            /* Obtain server's response */
-            BinaryCoder receiveDecoder = new BinaryCoder();
-            Message receiveMessage;
+            /* Wait for server's response */
             int l = in.readInt();
-            byte[] data = new byte[l];
-            in.readFully(data, 0, l);
-            receiveMessage = receiveDecoder.toMsg(data);
+            in.readFully(new byte[l], 0, l);
 
 //            /* Check if this message is correct response */
-//            if (receiveMessage.isResponse()) {
-//                System.out.println(receiveMessage.getVal());
+//            if (response.getStatus() != Status.ERROR) {
+//                System.out.println(response.getText());
 //            } else {
 //                throw new IOException("Error response! ");
 //            }
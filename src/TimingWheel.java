@@ -0,0 +1,118 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel (Varghese and Lauck) that runs tasks after a delay, at tick resolution.
+ * <p>
+ * Wheel is an array of slots, each slot holds a list of entries. A task that is due in <code>t</code> ticks goes
+ * to slot <code>(current + t) % slots</code> and remembers how many whole turns of wheel it must wait. Every tick,
+ * wheel thread only visits entries of one slot, hence scheduling is O(1) however many tasks are pending, and there
+ * is no heap to keep in order. Callers put new entries into a lock-free queue, and wheel thread moves them into slots,
+ * so slots are only touched by wheel thread. There is no cancel: a task checks by itself if it is still wanted.
+ * Tasks run on wheel thread and must be short.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 02:30
+ * Created with IntelliJ IDEA
+ */
+
+class TimingWheel implements Runnable {
+    private final long tick;        // tick in nanoseconds
+    private final Entry[] slots;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final long start = System.nanoTime();
+    private long ticks = 0;     // ticks that have been processed
+
+    /**
+     * @param tickMs wheel resolution in milliseconds
+     * @param slots  number of slots, rounded up to power of 2
+     * @param name   name of wheel thread
+     */
+    TimingWheel(long tickMs, int slots, String name) {
+        this.tick = Math.max(1, tickMs) * 1000000;
+        this.slots = new Entry[Integer.highestOneBit(Math.max(2, slots) - 1) << 1];
+        this.mask = this.slots.length - 1;
+        Thread thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Run task once after given delay. Safe to call from any thread.
+     *
+     * @param task    task to run on wheel thread
+     * @param delayMs delay in milliseconds, rounded up to next tick
+     */
+    void schedule(Runnable task, long delayMs) {
+        long due = System.nanoTime() - start + Math.max(0, delayMs) * 1000000;
+        pending.offer(new Entry(task, (due + tick - 1) / tick));
+    }
+
+    public void run() {
+        while (true) {
+            long next = (ticks + 1) * tick;
+            long wait = next - (System.nanoTime() - start);
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            ticks++;
+            transfer();
+            expire(ticks);
+        }
+    }
+
+    /**
+     * Move pending entries into their slots. An entry that is already due goes to current slot.
+     */
+    private void transfer() {
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            long due = Math.max(entry.due, ticks);
+            entry.rounds = (due - ticks) / slots.length;
+            int slot = (int) (due & mask);
+            entry.next = slots[slot];
+            slots[slot] = entry;
+        }
+    }
+
+    /**
+     * Run due entries of slot of given tick, entries that wait for later turns stay.
+     */
+    private void expire(long now) {
+        int slot = (int) (now & mask);
+        Entry entry = slots[slot];
+        slots[slot] = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.rounds > 0) {
+                entry.rounds--;
+                entry.next = slots[slot];
+                slots[slot] = entry;
+            } else {
+                try {
+                    entry.task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            entry = next;
+        }
+    }
+
+    private static final class Entry {
+        final Runnable task;
+        final long due;     // tick that task is due
+        long rounds;        // whole turns of wheel left
+        Entry next;
+
+        Entry(Runnable task, long due) {
+            this.task = task;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline simulator that replays a trace recorded by TracingStore.java through every eviction policy at many
+ * capacities, and prints hit ratio and byte hit ratio of each, so that capacity and policy can be chosen from real
+ * traffic before memory is bought.
+ * <p>
+ * Each (policy, capacity) pair is replayed by its own task on a thread pool. LRU and ARC run on LRUCache with the
+ * policy of the server, LFU runs on LongLFUCache keyed by key hash. Replay follows the trace as it is: SET stores,
+ * DELETE removes, GET only looks up, since clients store values after a miss themselves.
+ * Capacities are given for the whole workload; when trace is sampled, each one is divided by sample rate.
+ * <p>
+ * Usage: <code>java TraceSimulator [trace file] [capacity,capacity,...] [policy,policy,...]</code>. Without
+ * capacities, 12 doubling points from 1/2048 of distinct keys up to all distinct keys are simulated.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 01:00
+ * Created with IntelliJ IDEA
+ */
+
+public class TraceSimulator {
+    private static final String[] POLICIES = {"lru", "arc", "lfu"};
+
+    private final int sampleRate;
+    private int n = 0;
+    private long[] keys = new long[1024];
+    private byte[] ops = new byte[1024];
+    private int[] sizes = new int[1024];        // object size of each record
+    private long micros = 0;        // traced time span
+    private int distinct = 0;
+
+    /**
+     * Load whole trace into memory.
+     *
+     * @param path trace file
+     * @throws IOException if file is not a trace or can not be read
+     */
+    TraceSimulator(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 64 * 1024))) {
+            if (in.readInt() != TracingStore.MAGIC) {
+                throw new IOException(path + " is not a trace file");
+            }
+            short version = in.readShort();
+            if (version < 1 || version > TracingStore.VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            sampleRate = in.readInt();
+            in.readLong();      // start time
+            while (true) {
+                int delta;
+                try {
+                    delta = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (n == keys.length) {
+                    keys = Arrays.copyOf(keys, n * 2);
+                    ops = Arrays.copyOf(ops, n * 2);
+                    sizes = Arrays.copyOf(sizes, n * 2);
+                }
+                micros += delta;
+                keys[n] = in.readLong();
+                ops[n] = in.readByte();
+                sizes[n] = in.readInt();
+                n++;
+            }
+        }
+        fillSizes();
+    }
+
+    /**
+     * GET that missed on server has no value size. Use size of the latest earlier value of that key, or of the next
+     * value stored under it, so that byte hit ratio counts missed bytes too. APPEND becomes a SET of the latest size
+     * plus bytes added.
+     */
+    private void fillSizes() {
+        HashMap<Long, Integer> known = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (ops[i] == TracingStore.APPEND) {
+                ops[i] = TracingStore.SET;
+                sizes[i] += known.getOrDefault(keys[i], 0);
+            }
+            if (sizes[i] > 0) {
+                known.put(keys[i], sizes[i]);
+            } else if (ops[i] == TracingStore.GET) {
+                sizes[i] = known.getOrDefault(keys[i], 0);
+            }
+            known.putIfAbsent(keys[i], 0);
+        }
+        distinct = known.size();
+        known.clear();
+        for (int i = n - 1; i >= 0; i--) {
+            if (sizes[i] > 0) {
+                known.put(keys[i], sizes[i]);
+            } else if (ops[i] == TracingStore.GET) {
+                sizes[i] = known.getOrDefault(keys[i], 0);
+            }
+        }
+    }
+
+    /**
+     * Replay trace through one policy.
+     *
+     * @param policy   lru, arc or lfu
+     * @param capacity simulated capacity, already scaled by sample rate
+     * @return {hit ratio, byte hit ratio}
+     */
+    double[] replay(String policy, int capacity) {
+        long gets = 0, hits = 0, bytes = 0, hitBytes = 0;
+        if (policy.equals("lfu")) {
+            LongLFUCache cache = new LongLFUCache(capacity);
+            for (int i = 0; i < n; i++) {
+                if (ops[i] == TracingStore.GET) {
+                    gets++;
+                    bytes += sizes[i];
+                    if (cache.get(keys[i]) >= 0) {
+                        hits++;
+                        hitBytes += sizes[i];
+                    }
+                } else if (ops[i] == TracingStore.SET) {
+                    cache.put(keys[i], sizes[i]);
+                } else {
+                    cache.remove(keys[i]);
+                }
+            }
+        } else {
+            LRUCache cache = new LRUCache(capacity, null, false, policy);
+            for (int i = 0; i < n; i++) {
+                String key = Long.toHexString(keys[i]);
+                if (ops[i] == TracingStore.GET) {
+                    gets++;
+                    bytes += sizes[i];
+                    if (cache.get(key) != null) {
+                        hits++;
+                        hitBytes += sizes[i];
+                    }
+                } else if (ops[i] == TracingStore.SET) {
+                    cache.put(key, "");
+                } else {
+                    cache.remove(key);
+                }
+            }
+        }
+        return new double[]{gets == 0 ? 0 : (double) hits / gets, bytes == 0 ? 0 : (double) hitBytes / bytes};
+    }
+
+    /**
+     * @param args [trace file] [capacity,capacity,...] [policy,policy,...]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 1) {
+            System.err.println("Usage: java TraceSimulator [trace file] [capacity,capacity,...] [policy,policy,...]");
+            System.exit(-1);
+        }
+        long start = System.nanoTime();
+        TraceSimulator simulator = new TraceSimulator(args[0]);
+        System.out.printf("%d records, %d distinct keys, sample rate 1/%d, %.1f s of traffic, loaded in %d ms%n",
+                simulator.n, simulator.distinct, simulator.sampleRate, simulator.micros / 1e6,
+                (System.nanoTime() - start) / 1000000);
+
+        long[] capacities;
+        if (args.length > 1 && !args[1].equals("-")) {
+            capacities = Arrays.stream(args[1].split(",")).mapToLong(Long::parseLong).toArray();
+        } else {
+
+            /* Doubling capacities that end at all distinct keys of the whole workload */
+            long all = Math.max(1, (long) simulator.distinct * simulator.sampleRate);
+            capacities = new long[12];
+            for (int i = 0; i < capacities.length; i++) {
+                capacities[i] = Math.max(1, all >> (capacities.length - 1 - i));
+            }
+        }
+        String[] policies = args.length > 2 ? args[2].toLowerCase().split(",") : POLICIES;
+        for (String policy : policies) {
+            if (!Arrays.asList(POLICIES).contains(policy)) {
+                System.err.println("Unknown eviction policy: " + policy);
+                System.exit(-1);
+            }
+        }
+
+        /* One task per (capacity, policy) pair, each replays whole trace on its own cache */
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<List<Future<double[]>>> results = new ArrayList<>();
+        for (long capacity : capacities) {
+            int scaled = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, capacity / simulator.sampleRate));
+            List<Future<double[]>> row = new ArrayList<>();
+            for (String policy : policies) {
+                row.add(pool.submit(() -> simulator.replay(policy, scaled)));
+            }
+            results.add(row);
+        }
+        pool.shutdown();
+
+        StringBuilder header = new StringBuilder(String.format("%12s", "capacity"));
+        for (String policy : policies) {
+            header.append(String.format("  %9s %9s", policy + " hit", policy + " byte"));
+        }
+        System.out.println(header);
+        for (int i = 0; i < capacities.length; i++) {
+            StringBuilder line = new StringBuilder(String.format("%12d", capacities[i]));
+            for (Future<double[]> result : results.get(i)) {
+                double[] ratio = result.get();
+                line.append(String.format("  %9.4f %9.4f", ratio[0], ratio[1]));
+            }
+            System.out.println(line);
+        }
+        System.out.printf("Simulated in %d ms%n", (System.nanoTime() - start) / 1000000);
+    }
+}
@@ -0,0 +1,397 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Store wrapper that records a sampled trace of key accesses to a binary file, for offline replay by
+ * TraceSimulator.java.
+ * <p>
+ * Keys are sampled by hash (1 of every <code>sampleRate</code> keys), and every access of a sampled key is recorded,
+ * so the trace keeps reuse pattern of each key. Replaying it with capacity divided by sample rate estimates hit ratio
+ * of the full workload.
+ * <p>
+ * Request thread never writes file: it claims a slot of a bounded lock-free ring buffer, same as AccessLog.java, and
+ * fills time, key hash, op and size. One background thread writes filled slots in order. When ring is full the record
+ * is dropped and counted, and the count is logged as a warning.
+ * <p>
+ * File format: header [magic "KVTR" (4 bytes)] [version (2 bytes)] [sample rate (4 bytes)] [start time in ms (8
+ * bytes)], then 17 bytes per record: [microseconds since previous record (4 bytes)] [64-bit key hash (8 bytes)]
+ * [op (1 byte)] [value size (4 bytes)]. Value size is uncompressed UTF-8 bytes, of value found by GET (0 on miss),
+ * of value written by SET, or of bytes added by APPEND, since grown value is not read. Key itself is never written.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 01:00
+ * Created with IntelliJ IDEA
+ */
+
+public class TracingStore implements KeyValueStore, Closeable {
+
+    static final int MAGIC = 0x4b565452;
+    static final short VERSION = 2;     // 1 recorded some sizes in characters or compressed bytes, and had no APPEND
+    static final byte GET = 0;
+    static final byte SET = 1;
+    static final byte DELETE = 2;
+    static final byte APPEND = 3;
+
+    private final KeyValueStore store;
+    private final int sampleRate;
+    private final DataOutputStream out;
+    private final int mask;
+    private final AtomicLongArray sequence;     // slot i is free for position p if sequence is p, filled if p + 1
+    private final AtomicLong tail = new AtomicLong();       // next position to claim
+    private final AtomicLong dropped = new AtomicLong();
+    private long head = 0;      // next position to take, only used while holding lock
+    private final long[] times;     // in microseconds
+    private final long[] hashes;
+    private final byte[] ops;
+    private final int[] sizes;
+    private long last;      // time of previous record in microseconds, only used while holding lock
+    private volatile boolean closed = false;
+
+    /**
+     * @param store      store that serves operations
+     * @param path       trace file, overwritten
+     * @param sampleRate record 1 of every sampleRate keys, 1 to record all
+     * @param capacity   records that ring buffer holds
+     * @throws IOException if file can not be created
+     */
+    public TracingStore(KeyValueStore store, String path, int sampleRate, int capacity) throws IOException {
+        this.store = store;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 64 * 1024));
+        long now = System.currentTimeMillis();
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(this.sampleRate);
+        out.writeLong(now);
+        last = System.nanoTime() / 1000;
+
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+        times = new long[size];
+        hashes = new long[size];
+        ops = new byte[size];
+        sizes = new int[size];
+        Thread writer = new Thread(this::drain, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of key, also used to choose sampled keys.
+     *
+     * @param key key
+     * @return hash
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private void trace(String key, byte op, int size) {
+        long h = hash(key);
+        if (sampled(h)) {
+            record(h, op, size);
+        }
+    }
+
+    /**
+     * Size is only counted for a sampled key, since a string is scanned for its UTF-8 bytes.
+     *
+     * @param value value, or null for size 0
+     */
+    private void trace(String key, byte op, String value) {
+        long h = hash(key);
+        if (sampled(h)) {
+            record(h, op, value == null ? 0 : utf8Length(value));
+        }
+    }
+
+    /**
+     * @param holder node that received value, or null for size 0
+     */
+    private void trace(String key, byte op, Node holder) {
+        long h = hash(key);
+        if (sampled(h)) {
+            record(h, op, holder == null ? 0
+                    : holder.packed != null ? ValueCodec.rawLength(holder.packed) : utf8Length(holder.val));
+        }
+    }
+
+    private boolean sampled(long h) {
+        return !closed && (sampleRate == 1 || Long.remainderUnsigned(h * 0x9E3779B97F4A7C15L, sampleRate) == 0);
+    }
+
+    /**
+     * Bytes of string in UTF-8, counted without encoding it.
+     */
+    private static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                length += Character.isSurrogate(c) ? 1 : 2;     // a pair takes 4 bytes, 2 for each half
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Claim a slot, fill it and publish it. Record is dropped if ring is full.
+     */
+    private void record(long h, byte op, int size) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long difference = sequence.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        times[slot] = System.nanoTime() / 1000;
+        hashes[slot] = h;
+        ops[slot] = op;
+        sizes[slot] = size;
+        sequence.lazySet(slot, position + 1);
+    }
+
+    /**
+     * Writer thread: write filled records in order, flush and park shortly when ring is empty, until closed.
+     */
+    private void drain() {
+        long reported = 0;
+        while (!closed) {
+            int written = take();
+            long lost = dropped.get();
+            if (lost != reported) {
+                AccessLog.event(AccessLog.WARN, "trace dropped records", lost - reported);
+                reported = lost;
+            }
+            if (written == 0) {
+                LockSupport.parkNanos(1000000);
+            }
+        }
+    }
+
+    /**
+     * Write all filled records, and flush file if there were none.
+     *
+     * @return number of records written
+     */
+    private synchronized int take() {
+        if (closed) {
+            return 0;
+        }
+        int count = 0;
+        try {
+            while (true) {
+                int slot = (int) head & mask;
+                if (sequence.get(slot) != head + 1) {
+                    break;
+                }
+
+                /* Slots are claimed before time is read, hence time may go back a little */
+                long time = times[slot];
+                out.writeInt((int) Math.max(0, Math.min(Integer.MAX_VALUE, time - last)));
+                out.writeLong(hashes[slot]);
+                out.writeByte(ops[slot]);
+                out.writeInt(sizes[slot]);
+                last = Math.max(last, time);
+                sequence.lazySet(slot, head + mask + 1);
+                head++;
+                count++;
+            }
+            if (count == 0) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closed = true;
+        }
+        return count;
+    }
+
+    /**
+     * Write records that are still in ring, then flush and close trace file. Later operations are not recorded.
+     *
+     * @throws IOException if file can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        take();
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+
+    public String get(String key) {
+        String val = store.get(key);
+        trace(key, GET, val);
+        return val;
+    }
+
+    public boolean read(String key, Node holder) {
+        boolean found = store.read(key, holder);
+        trace(key, GET, found ? holder : null);
+        return found;
+    }
+
+    @Override
+    public void readAll(String[] keys, int n, Node[] holders, boolean[] found) {
+        store.readAll(keys, n, holders, found);
+        for (int i = 0; i < n; i++) {
+            trace(keys[i], GET, found[i] ? holders[i] : null);
+        }
+    }
+
+    public boolean put(String key, String value) {
+        trace(key, SET, value);
+        return store.put(key, value);
+    }
+
+    public boolean put(String key, String value, int flags) {
+        trace(key, SET, value);
+        return store.put(key, value, flags);
+    }
+
+    @Override
+    public void putAll(String[] keys, String[] values, int n) {
+        for (int i = 0; i < n; i++) {
+            trace(keys[i], SET, values[i]);
+        }
+        store.putAll(keys, values, n);
+    }
+
+    public StoreResult add(String key, String value, int flags) {
+        StoreResult result = store.add(key, value, flags);
+        if (result == StoreResult.STORED) {
+            trace(key, SET, value);
+        }
+        return result;
+    }
+
+    public StoreResult replace(String key, String value, int flags) {
+        StoreResult result = store.replace(key, value, flags);
+        if (result == StoreResult.STORED) {
+            trace(key, SET, value);
+        }
+        return result;
+    }
+
+    public StoreResult cas(String key, String value, int flags, long expected) {
+        StoreResult result = store.cas(key, value, flags, expected);
+        if (result == StoreResult.STORED) {
+            trace(key, SET, value);
+        }
+        return result;
+    }
+
+    public Long incr(String key, long delta, boolean decrement) throws NumberFormatException {
+        Long result = store.incr(key, delta, decrement);
+        if (result != null) {
+            trace(key, SET, Long.toUnsignedString(result).length());     // ASCII digits
+        }
+        return result;
+    }
+
+    public long append(String key, String value, boolean prepend) {
+        long length = store.append(key, value, prepend);
+        if (length >= 0) {
+            trace(key, APPEND, value);
+        }
+        return length;
+    }
+
+    public String getRange(String key, long offset, int length) {
+        String part = store.getRange(key, offset, length);
+        trace(key, GET, part);
+        return part;
+    }
+
+    public boolean remove(String key) {
+        trace(key, DELETE, 0);
+        return store.remove(key);
+    }
+
+    public boolean remove(String key, long expected) {
+        boolean removed = store.remove(key, expected);
+        if (removed) {
+            trace(key, DELETE, 0);
+        }
+        return removed;
+    }
+
+    public ScanPage scan(String prefix, String cursor, int count) {
+        return store.scan(prefix, cursor, count);
+    }
+
+    public ScanPage range(String from, boolean inclusive, String to, int count) {
+        return store.range(from, inclusive, to, count);
+    }
+
+    public DumpCursor dump() {
+        return store.dump();
+    }
+
+    public boolean isOrdered() {
+        return store.isOrdered();
+    }
+
+    public void setListener(Consumer<String> listener) {
+        store.setListener(listener);
+    }
+
+    public String stats() {
+        return store.stats();
+    }
+
+    public int compressedCount() {
+        return store.compressedCount();
+    }
+
+    public int dedupValues() {
+        return store.dedupValues();
+    }
+
+    public int dedupRefs() {
+        return store.dedupRefs();
+    }
+
+    public long hits() {
+        return store.hits();
+    }
+
+    public long misses() {
+        return store.misses();
+    }
+
+    public String policy() {
+        return store.policy();
+    }
+}
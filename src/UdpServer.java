@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UDP listener for small GET requests. There is no connection state, each datagram is one request.
+ * <p>
+ * Request datagram: [request ID (4 bytes)] [binary coder message of GET or GETS, which may name a keyspace].
+ * Response datagram: [request ID (4 bytes)] [compact GETS response (see in Response.java)].
+ * Status is HIT followed by CAS stamp and raw value, MISS, TOO_LARGE if response does not fit in one datagram (client
+ * should retry over TCP), or ERROR if request can not be decoded, operation is not supported or keyspace is unknown.
+ * <p>
+ * A small pool of threads reads the same blocking DatagramChannel.
+ * <p>
+ * UDP has no handshake, so source address of a datagram is easily forged, and a GET of a few bytes that names a large
+ * value makes server send up to MAX_DATAGRAM bytes to whoever the forged address belongs to. That is the reflection
+ * and amplification attack that open memcached UDP ports were used for. Hence listener binds to loopback unless an
+ * address is given, and should only be exposed to trusted networks.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 20:20
+ * Created with IntelliJ IDEA
+ */
+
+class UdpServer {
+
+    static final int MAX_DATAGRAM = 1400;       // keep response in one Ethernet frame
+
+    private final DatagramChannel channel;
+    private final Keyspaces keyspaces;
+    private final HotKeyTracker hotKeys;
+
+    /**
+     * @param address   local address to listen on, loopback keeps listener out of reach of other hosts
+     * @param port      UDP port
+     * @param keyspaces keyspaces shared with TCP server
+     * @param hotKeys   hot key tracker, or null
+     * @throws IOException if address is unknown or port can not be bound
+     */
+    UdpServer(String address, int port, Keyspaces keyspaces, HotKeyTracker hotKeys) throws IOException {
+        InetSocketAddress local = new InetSocketAddress(address, port);
+        if (local.isUnresolved()) {
+            throw new IOException("Unknown address: " + address);
+        }
+        this.channel = DatagramChannel.open();
+        this.channel.bind(local);
+        this.keyspaces = keyspaces;
+        this.hotKeys = hotKeys;
+    }
+
+    /**
+     * Start reading threads.
+     *
+     * @param threads number of threads
+     */
+    void start(int threads) {
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::serve, "udp-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Receive and answer datagrams until channel is closed. Buffers and coder are reused for every datagram.
+     */
+    private void serve() {
+        ByteBuffer in = ByteBuffer.allocate(MAX_DATAGRAM);
+        ByteBuffer out = ByteBuffer.allocate(MAX_DATAGRAM);
+        BinaryCoder coder = new BinaryCoder();
+        Node holder = new Node();
+
+        while (channel.isOpen()) {
+            SocketAddress client;
+            in.clear();
+            try {
+                client = channel.receive(in);
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    AccessLog.event(AccessLog.WARN, "udp receive error", e);
+                }
+                continue;
+            }
+            in.flip();
+            if (in.remaining() < 4) {
+                continue;
+            }
+            int id = in.getInt();
+            out.clear();
+            out.putInt(id);
+            answer(in, out, coder, holder);
+            out.flip();
+            try {
+                channel.send(out, client);
+            } catch (IOException e) {
+                AccessLog.event(AccessLog.WARN, "udp send error", e);
+            }
+        }
+    }
+
+    /**
+     * Decode request and write response.
+     *
+     * @param in     request datagram, positioned after request ID
+     * @param out    response datagram, positioned after request ID
+     * @param coder  binary coder
+     * @param holder reused node that receives value
+     */
+    private void answer(ByteBuffer in, ByteBuffer out, BinaryCoder coder, Node holder) {
+        Message request;
+        try {
+            byte[] data = new byte[in.remaining()];
+            in.get(data);
+            request = coder.toRequest(data);
+        } catch (IOException | IllegalArgumentException e) {
+            AccessLog.request("udp", null, Status.ERROR, 0);
+            Response.write(out, Status.ERROR, false, 0, null, false);
+            return;
+        }
+        String op = "udp-" + request.getOp();
+        if (!request.isRequest() || (!request.getOp().equals("get") && !request.getOp().equals("gets"))) {
+            AccessLog.request(op, request.getKey(), Status.ERROR, 0);
+            Response.write(out, Status.ERROR, false, 0, null, false);
+            return;
+        }
+        KeyValueStore store = keyspaces.get(request.getKeyspace());
+        if (store == null) {
+            AccessLog.request(op, request.getKey(), Status.ERROR, 0);
+            Response.write(out, Status.ERROR, false, 0, null, false);
+            return;
+        }
+        if (!store.read(request.getKey(), holder)) {
+            record(request.getKey(), 0);
+            AccessLog.request(op, request.getKey(), Status.MISS, 0);
+            Response.write(out, Status.MISS, false, 0, null, false);
+            return;
+        }
+        byte[] value;
+        boolean compressed = holder.packed != null && request.isCompressed();
+        if (compressed) {
+            value = holder.packed;
+        } else if (holder.packed != null) {
+            try {
+                value = ValueCodec.unpack(holder.packed);
+            } catch (IOException e) {
+                AccessLog.request(op, request.getKey(), Status.ERROR, 0);
+                Response.write(out, Status.ERROR, false, 0, null, false);
+                return;
+            }
+        } else {
+            value = holder.val.getBytes(StandardCharsets.UTF_8);
+        }
+        record(request.getKey(), compressed ? ValueCodec.rawLength(value) : value.length);
+        if (1 + 8 + value.length > out.remaining()) {
+            AccessLog.request(op, request.getKey(), Status.TOO_LARGE, value.length);
+            Response.write(out, Status.TOO_LARGE, false, 0, null, false);
+            return;
+        }
+        AccessLog.request(op, request.getKey(), Status.HIT, value.length);
+        Response.write(out, Status.HIT, true, holder.cas, value, compressed);
+    }
+
+    private void record(String key, int byteCount) {
+        if (hotKeys != null) {
+            hotKeys.record(key, byteCount);
+        }
+    }
+
+    /**
+     * Stop listening.
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Value compression used by cache and binary protocol.
+ * Values whose UTF-8 size reaches the threshold are compressed with raw Deflate at fastest level.
+ * Compressed form (packed value) is 4 bytes original length followed by deflate data.
+ * If compression does not save at least 1/8 of size, value is kept as it is.
+ * Original length is at most <code>MAX_LENGTH</code>, larger values are never packed and a packed value that declares
+ * more is refused before anything is allocated, since the length may come from a peer.
+ * Deflater and Inflater hold native memory until they are ended, hence they are shared by all threads through small
+ * bounded pools and reset on checkout. One that finds its pool full on return is ended at once, so no more than the
+ * pool size of them outlives a burst, and none is left behind by a thread that exits.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/19 17:05
+ * Created with IntelliJ IDEA
+ */
+
+public class ValueCodec {
+
+    /**
+     * Largest original length of a packed value, same as largest binary request of server, so no value that server
+     * accepts is larger.
+     */
+    public static final int MAX_LENGTH = 2 * 1024 * 1024;
+
+    private static final int POOL = Runtime.getRuntime().availableProcessors() * 2;
+    private static final ArrayBlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL);
+    private static final ArrayBlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL);
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[8 * 1024]);
+
+    private final int threshold;
+
+    /**
+     * @param threshold values smaller than this size (in bytes) are never compressed
+     */
+    public ValueCodec(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Compress value if it is large enough and compressible.
+     *
+     * @param value value to be stored
+     * @return packed value, or null if value should be stored as it is
+     */
+    public byte[] compress(String value) {
+        if (value.length() < threshold) {
+            return null;
+        }
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < threshold) {
+            return null;
+        }
+        return pack(raw);
+    }
+
+    /**
+     * Compress given bytes unconditionally, unless compression does not save space.
+     *
+     * @param raw value bytes
+     * @return packed value, or null if compression does not save space or value is longer than MAX_LENGTH
+     */
+    public static byte[] pack(byte[] raw) {
+        if (raw.length > MAX_LENGTH) {
+            return null;
+        }
+        byte[] buffer = BUFFER.get();
+        ByteArrayOutputStream packed = new ByteArrayOutputStream(raw.length / 2 + 8);
+        packed.write(raw.length >>> 24);
+        packed.write(raw.length >>> 16);
+        packed.write(raw.length >>> 8);
+        packed.write(raw.length);
+        int limit = raw.length - raw.length / 8;
+
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+        } else {
+            deflater.reset();
+        }
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                packed.write(buffer, 0, n);
+                if (packed.size() > limit) {
+                    return null;
+                }
+            }
+        } finally {
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+        return packed.toByteArray();
+    }
+
+    /**
+     * Restore original value from packed value.
+     *
+     * @param packed packed value
+     * @return original value
+     * @throws IllegalStateException if packed value is corrupted
+     */
+    public static String decompress(byte[] packed) {
+        try {
+            return new String(unpack(packed), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read length of original bytes from header of packed value, without decompressing it.
+     *
+     * @param packed packed value, at least 4 bytes
+     * @return declared length of original bytes
+     */
+    public static int rawLength(byte[] packed) {
+        return ((packed[0] & 0xff) << 24) | ((packed[1] & 0xff) << 16) | ((packed[2] & 0xff) << 8) | (packed[3] & 0xff);
+    }
+
+    /**
+     * Restore original bytes from packed value.
+     *
+     * @param packed packed value
+     * @return original bytes
+     * @throws IOException if packed value is corrupted, does not hold exactly the declared length, or declares more
+     *                     than MAX_LENGTH bytes
+     */
+    public static byte[] unpack(byte[] packed) throws IOException {
+        if (packed.length < 4) {
+            throw new IOException("Packed value is too short! ");
+        }
+        int length = rawLength(packed);
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("Wrong packed value length! ");
+        }
+        byte[] raw = new byte[length];
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        } else {
+            inflater.reset();
+        }
+        try {
+            inflater.setInput(packed, 4, packed.length - 4);
+            int n = 0;
+            while (n < length) {
+                int read = inflater.inflate(raw, n, length - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Packed value is truncated! ");
+                }
+                n += read;
+            }
+
+            /* End of stream may not be consumed yet once all bytes are out, one more call must finish without output */
+            if (!inflater.finished() && (inflater.inflate(new byte[1]) > 0 || !inflater.finished())) {
+                throw new IOException("Packed value is longer than its declared length! ");
+            }
+            if (inflater.getRemaining() > 0) {
+                throw new IOException("Packed value has trailing bytes! ");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Packed value is corrupted! ", e);
+        } finally {
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+        return raw;
+    }
+}
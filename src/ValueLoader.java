@@ -0,0 +1,20 @@
+import java.io.IOException;
+
+/**
+ * Source of values that fills cache misses, e.g. a database in front of which server runs (see in LoadingStore.java).
+ * Implementation is called by many threads at once, but never twice at the same time for the same key.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 03:30
+ * Created with IntelliJ IDEA
+ */
+
+public interface ValueLoader {
+
+    /**
+     * @param key requested key
+     * @return value of key, or null if source does not have it
+     * @throws IOException if source can not be reached
+     */
+    String load(String key) throws IOException;
+}
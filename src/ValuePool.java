@@ -0,0 +1,144 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Content-addressed pool of values, used by LRUCache to keep one copy of each distinct value however many keys
+ * hold it.
+ * <p>
+ * A value is looked up by its content hash and, on a hash match, by comparing content; the copy that is already in pool
+ * is returned and its reference count goes up, otherwise given value becomes the pooled copy. When a key lets go of a
+ * value (overwritten, removed or evicted) its count goes down, and value leaves pool at zero. Plain values and
+ * compressed values (see in ValueCodec.java) are pooled separately. Every value that a cache stores must go through
+ * pool, since release finds entry of a plain value by content, and entry of a compressed value by the pooled array
+ * itself, so that release neither wraps nor hashes bytes again. Pool is not thread safe, LRUCache uses it while
+ * holding cache lock.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 04:00
+ * Created with IntelliJ IDEA
+ */
+
+class ValuePool {
+    private final HashMap<String, Entry<String>> plain = new HashMap<>();
+    private final HashMap<Blob, Entry<Blob>> compressed = new HashMap<>();
+    private final IdentityHashMap<byte[], Entry<Blob>> pooledArrays = new IdentityHashMap<>();     // same entries
+    private int references = 0;
+
+    /**
+     * @param value value to be stored
+     * @return pooled copy with same content, one more reference is counted
+     */
+    String intern(String value) {
+        Entry<String> entry = plain.get(value);
+        if (entry == null) {
+            entry = new Entry<>(value);
+            plain.put(value, entry);
+        }
+        entry.count++;
+        references++;
+        return entry.value;
+    }
+
+    /**
+     * @param value compressed value to be stored, wrapped by <code>Blob</code>
+     * @return pooled copy with same content, one more reference is counted
+     */
+    byte[] intern(Blob value) {
+        Entry<Blob> entry = compressed.get(value);
+        if (entry == null) {
+            entry = new Entry<>(value);
+            compressed.put(value, entry);
+            pooledArrays.put(value.bytes, entry);
+        }
+        entry.count++;
+        references++;
+        return entry.value.bytes;
+    }
+
+    /**
+     * Drop one reference of a value that was returned by <code>intern</code>. Null, or a value not in pool, is ignored.
+     *
+     * @param value pooled value
+     */
+    void release(String value) {
+        if (value == null) {
+            return;
+        }
+        Entry<String> entry = plain.get(value);
+        if (entry == null) {
+            return;
+        }
+        if (--entry.count == 0) {
+            plain.remove(value);
+        }
+        references--;
+    }
+
+    /**
+     * Drop one reference of a compressed value that was returned by <code>intern</code>. Null, or an array that is
+     * not the pooled one, is ignored.
+     *
+     * @param value pooled compressed value
+     */
+    void release(byte[] value) {
+        if (value == null) {
+            return;
+        }
+        Entry<Blob> entry = pooledArrays.get(value);
+        if (entry == null) {
+            return;
+        }
+        if (--entry.count == 0) {
+            compressed.remove(entry.value);
+            pooledArrays.remove(value);
+        }
+        references--;
+    }
+
+    /**
+     * @return number of distinct values in pool
+     */
+    int distinct() {
+        return plain.size() + compressed.size();
+    }
+
+    /**
+     * @return number of references to pooled values, one for each key that holds a pooled value
+     */
+    int references() {
+        return references;
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        int count = 0;
+
+        Entry(T value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Byte array compared by content, with hash computed once.
+     */
+    static final class Blob {
+        final byte[] bytes;
+        private final int hash;
+
+        Blob(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Blob && Arrays.equals(bytes, ((Blob) other).bytes);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * Value that grows at both ends without copying what is already stored, used by APPEND / PREPEND of LRUCache.
+ * <p>
+ * Value is kept as a list of string chunks with start offset of each chunk. Chunks are stored in the middle of an
+ * array that grows at both ends, and a prepended chunk gets a negative start, so no offset has to be shifted.
+ * Ranged read finds first chunk by binary search and copies only requested characters. A small piece is merged into
+ * chunk at the same end while that stays below <code>CHUNK</code> characters, so that many tiny appends do not
+ * leave a chunk object each; hence append copies at most one chunk, never the whole value.
+ * Offsets and lengths are in characters. Rope is not thread safe, LRUCache uses it while holding cache lock.
+ *
+ * @author BorisMirage
+ * Time: 2026/10/20 02:00
+ * Created with IntelliJ IDEA
+ */
+
+class ValueRope {
+    private static final int CHUNK = 8 * 1024;     // pieces are merged while chunk stays below this size
+
+    private String[] chunks = new String[8];
+    private long[] starts = new long[8];        // start offset of each chunk
+    private int first = 4;      // index of first chunk
+    private int last = 4;       // index after last chunk
+    private long begin = 0;     // offset of first character, negative after prepend
+    private long end = 0;       // offset after last character
+
+    /**
+     * @param value current value
+     */
+    ValueRope(String value) {
+        append(value);
+    }
+
+    /**
+     * @return number of characters
+     */
+    long length() {
+        return end - begin;
+    }
+
+    /**
+     * @param piece characters added after value
+     */
+    void append(String piece) {
+        if (piece.isEmpty()) {
+            return;
+        }
+        if (last > first && chunks[last - 1].length() + piece.length() <= CHUNK) {
+            chunks[last - 1] = chunks[last - 1].concat(piece);
+        } else {
+            if (last == chunks.length) {
+                grow();
+            }
+            chunks[last] = piece;
+            starts[last++] = end;
+        }
+        end += piece.length();
+    }
+
+    /**
+     * @param piece characters added before value
+     */
+    void prepend(String piece) {
+        if (piece.isEmpty()) {
+            return;
+        }
+        begin -= piece.length();
+        if (last > first && chunks[first].length() + piece.length() <= CHUNK) {
+            chunks[first] = piece.concat(chunks[first]);
+        } else {
+            if (first == 0) {
+                grow();
+            }
+            chunks[--first] = piece;
+        }
+        starts[first] = begin;
+    }
+
+    /**
+     * Copy part of value.
+     *
+     * @param offset first character, from 0
+     * @param length max number of characters
+     * @return part of value, shorter if value ends first, empty if offset is beyond end
+     */
+    String substring(long offset, int length) {
+        long from = begin + Math.max(0, offset);
+        long to = Math.min(end, from + Math.max(0, length));
+        if (from >= to) {
+            return "";
+        }
+        int i = Arrays.binarySearch(starts, first, last, from);
+        if (i < 0) {
+            i = -i - 2;     // chunk that contains offset
+        }
+        StringBuilder builder = new StringBuilder((int) (to - from));
+        for (; i < last && starts[i] < to; i++) {
+            int chunkFrom = (int) Math.max(0, from - starts[i]);
+            int chunkTo = (int) Math.min(chunks[i].length(), to - starts[i]);
+            builder.append(chunks[i], chunkFrom, chunkTo);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return whole value in one string
+     */
+    @Override
+    public String toString() {
+        if (last - first == 1) {
+            return chunks[first];
+        }
+        StringBuilder builder = new StringBuilder((int) length());
+        for (int i = first; i < last; i++) {
+            builder.append(chunks[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Same as <code>substring</code> for a plain string, so that callers treat both representations alike.
+     *
+     * @param value  whole value
+     * @param offset first character, from 0
+     * @param length max number of characters
+     * @return part of value
+     */
+    static String slice(String value, long offset, int length) {
+        if (offset >= value.length() || length <= 0) {
+            return "";
+        }
+        int from = (int) Math.max(0, offset);
+        return value.substring(from, (int) Math.min(value.length(), (long) from + length));
+    }
+
+    /**
+     * Double array and put chunks back in the middle, so that both ends have room again.
+     */
+    private void grow() {
+        int count = last - first;
+        int size = Math.max(chunks.length, count * 2) * 2;
+        String[] newChunks = new String[size];
+        long[] newStarts = new long[size];
+        int newFirst = (size - count) / 2;
+        System.arraycopy(chunks, first, newChunks, newFirst, count);
+        System.arraycopy(starts, first, newStarts, newFirst, count);
+        chunks = newChunks;
+        starts = newStarts;
+        first = newFirst;
+        last = newFirst + count;
+    }
+}